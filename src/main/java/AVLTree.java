@@ -1,17 +1,281 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
-
-public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
-    private Node<T> root;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+public class AVLTree <T> extends AbstractSet<T> implements NavigableSet<T> {
+    private final Comparator<? super T> comparator;
+    Node<T> root;
     int size = 0;
-
-    private static class Node<T> {
+    private Node<T> matched; // the node that the last add or remove ran into
+    // the value that the pending seek() looked for, the ancestors it passed and whether it went left
+    // below each; seekDepth is -1 when no seek is pending
+    private Object sought;
+    private Node<T>[] seekPath;
+    private boolean[] seekLeft;
+    private int seekDepth = -1;
+
+    static class Node<T> {
         T value;
         Node<T> left;
         Node<T> right;
+        int height;
+        int size;
 
         Node(T value) {
             this.value = value;
             this.left = this.right = null;
+            this.height = 1;
+            this.size = 1;
+        }
+    }
+
+    public AVLTree() {
+        this(null);
+    }
+
+    // orders the values with comparator, or by their natural ordering when it is null
+    public AVLTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    /*
+        every comparison goes through here. Without a comparator, keys of the common final key types
+        are compared through a direct call instead of the shared Comparable.compareTo call site,
+        which turns megamorphic as soon as trees of different key types are in use
+     */
+    @SuppressWarnings("unchecked")
+    static <T> int compare(Comparator<? super T> comparator, Object a, Object b) {
+        if (comparator != null) return comparator.compare((T) a, (T) b);
+        Class<?> type = a.getClass();
+        if (type == Integer.class) return Integer.compare((Integer) a, (Integer) b);
+        if (type == Long.class) return Long.compare((Long) a, (Long) b);
+        if (type == String.class) return ((String) a).compareTo((String) b);
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+
+    int compare(Object a, Object b) {
+        return compare(comparator, a, b);
+    }
+
+    // builds a perfectly balanced tree from size strictly ascending values in O(n), without rotations
+    public static <T extends Comparable<T>> AVLTree<T> fromSorted(Iterator<? extends T> iterator, int size) {
+        return fromSorted(iterator, size, null);
+    }
+
+    // the same, for values strictly ascending under comparator
+    public static <T> AVLTree<T> fromSorted(Iterator<? extends T> iterator, int size, Comparator<? super T> comparator) {
+        if (size < 0) throw new IllegalArgumentException("size < 0: " + size);
+        AVLTree<T> tree = new AVLTree<>(comparator);
+        tree.root = tree.buildFromSorted(iterator, 0, size - 1);
+        tree.size = size;
+        return tree;
+    }
+
+    private Node<T> buildFromSorted(Iterator<? extends T> iterator, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = (lo + hi) >>> 1;
+        Node<T> left = buildFromSorted(iterator, lo, mid - 1);
+        Node<T> node = newNode(iterator.next());
+        node.left = left;
+        node.right = buildFromSorted(iterator, mid + 1, hi);
+        update(node);
+        return node;
+    }
+
+    // an immutable, search-optimized copy of the current values, built in O(n); later changes to this tree don't show
+    public FrozenAVLTree<T> freeze() {
+        return new FrozenAVLTree<>(iterator(), size(), comparator);
+    }
+
+    /*
+        snapshot layout:
+
+        | magic | version | flags | key width | size | block 0 | block 1 | ...
+
+        each block is | count | stored length | count keys, deflated when flags has SNAPSHOT_DEFLATE |
+     */
+    private static final int SNAPSHOT_MAGIC = 0x41564C53;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_DEFLATE = 1;
+    private static final int SNAPSHOT_BLOCK = 4096;
+
+    public void writeTo(WritableByteChannel channel, KeyCodec<T> codec, boolean compress) throws IOException {
+        writeTo(Channels.newOutputStream(channel), codec, compress);
+    }
+
+    // streams the values in order, one block at a time; out is flushed but not closed
+    public void writeTo(OutputStream out, KeyCodec<T> codec, boolean compress) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        int width = codec.width();
+        data.writeInt(SNAPSHOT_MAGIC);
+        data.writeInt(SNAPSHOT_VERSION);
+        data.writeByte(compress ? SNAPSHOT_DEFLATE : 0);
+        data.writeInt(width);
+        data.writeInt(size());
+
+        byte[] raw = new byte[SNAPSHOT_BLOCK * width];
+        ByteBuffer block = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        Deflater deflater = compress ? new Deflater() : null;
+        ByteArrayOutputStream packed = compress ? new ByteArrayOutputStream(raw.length) : null;
+        try {
+            int count = 0;
+            for (T value : this) {
+                codec.write(block, count * width, value);
+                if (++count == SNAPSHOT_BLOCK) {
+                    writeBlock(data, raw, count * width, count, deflater, packed);
+                    count = 0;
+                }
+            }
+            if (count > 0) writeBlock(data, raw, count * width, count, deflater, packed);
+            data.flush();
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    private static void writeBlock(DataOutputStream data, byte[] raw, int length, int count,
+                                   Deflater deflater, ByteArrayOutputStream packed) throws IOException {
+        data.writeInt(count);
+        if (deflater == null) {
+            data.writeInt(length);
+            data.write(raw, 0, length);
+            return;
+        }
+        packed.reset();
+        deflater.reset();
+        DeflaterOutputStream deflating = new DeflaterOutputStream(packed, deflater);
+        deflating.write(raw, 0, length);
+        deflating.finish();
+        data.writeInt(packed.size());
+        packed.writeTo(data);
+    }
+
+    public static <T extends Comparable<T>> AVLTree<T> readFrom(ReadableByteChannel channel, KeyCodec<T> codec) throws IOException {
+        return readFrom(Channels.newInputStream(channel), codec, null);
+    }
+
+    public static <T> AVLTree<T> readFrom(ReadableByteChannel channel, KeyCodec<T> codec,
+                                          Comparator<? super T> comparator) throws IOException {
+        return readFrom(Channels.newInputStream(channel), codec, comparator);
+    }
+
+    // rebuilds a balanced tree in O(n) while decoding, holding a single block in memory; in is not closed
+    public static <T extends Comparable<T>> AVLTree<T> readFrom(InputStream in, KeyCodec<T> codec) throws IOException {
+        return readFrom(in, codec, null);
+    }
+
+    // the same, for a snapshot of a tree ordered by comparator
+    public static <T> AVLTree<T> readFrom(InputStream in, KeyCodec<T> codec, Comparator<? super T> comparator) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != SNAPSHOT_MAGIC) throw new IOException("not an AVLTree snapshot");
+        int version = data.readInt();
+        if (version != SNAPSHOT_VERSION) throw new IOException("unsupported snapshot version " + version);
+        boolean compressed = (data.readByte() & SNAPSHOT_DEFLATE) != 0;
+        int width = data.readInt();
+        if (width != codec.width()) {
+            throw new IOException("snapshot has " + width + "-byte keys, codec uses " + codec.width());
+        }
+        int size = data.readInt();
+        if (size < 0) throw new IOException("corrupt snapshot size " + size);
+
+        SnapshotReader<T> reader = new SnapshotReader<>(data, codec, comparator, compressed, size);
+        try {
+            return fromSorted(reader, size, comparator);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            reader.end();
+        }
+    }
+
+    private static class SnapshotReader<T> implements Iterator<T> {
+        private final DataInputStream data;
+        private final KeyCodec<T> codec;
+        private final Comparator<? super T> comparator;
+        private final Inflater inflater;
+        private final byte[] raw;
+        private final ByteBuffer block;
+        private byte[] packed = new byte[0];
+        private int remaining;
+        private int count;
+        private int position;
+        private T previous;
+        private boolean started;
+
+        SnapshotReader(DataInputStream data, KeyCodec<T> codec, Comparator<? super T> comparator, boolean compressed, int size) {
+            this.data = data;
+            this.codec = codec;
+            this.comparator = comparator;
+            this.inflater = compressed ? new Inflater() : null;
+            this.raw = new byte[SNAPSHOT_BLOCK * codec.width()];
+            this.block = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+            this.remaining = size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                if (position == count) readBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            T value = codec.read(block, position++ * codec.width());
+            if (started && compare(comparator, previous, value) >= 0) {
+                throw new UncheckedIOException(new IOException("snapshot values are not strictly ascending"));
+            }
+            previous = value;
+            started = true;
+            remaining--;
+            return value;
+        }
+
+        private void readBlock() throws IOException {
+            count = data.readInt();
+            int stored = data.readInt();
+            int length = count * codec.width();
+            if (count <= 0 || count > SNAPSHOT_BLOCK || count > remaining || stored < 0) {
+                throw new IOException("corrupt snapshot block");
+            }
+            if (inflater == null) {
+                if (stored != length) throw new IOException("corrupt snapshot block");
+                data.readFully(raw, 0, length);
+            } else {
+                if (packed.length < stored) packed = new byte[stored];
+                data.readFully(packed, 0, stored);
+                inflater.reset();
+                inflater.setInput(packed, 0, stored);
+                try {
+                    if (inflater.inflate(raw, 0, length) != length || !inflater.finished()) {
+                        throw new IOException("corrupt snapshot block");
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("corrupt snapshot block", e);
+                }
+            }
+            position = 0;
+        }
+
+        void end() {
+            if (inflater != null) inflater.end();
         }
     }
 
@@ -29,62 +293,183 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
         @SuppressWarnings("unchecked")
         T t = (T) o;
         Node<T> closest = find(t);
-        return closest != null && t.compareTo(closest.value) == 0;
+        return closest != null && compare(t, closest.value) == 0;
     }
 
     private int getHeight(Node<T> node) {
-        if (node == null) return 0;
-        return 1 + Math.max(getHeight(node.left), getHeight(node.right));
+        return node == null ? 0 : node.height;
+    }
+
+    private int getSize(Node<T> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // recomputes the cached fields of node from its children; every relink goes through here
+    void update(Node<T> node) {
+        node.height = 1 + Math.max(getHeight(node.left), getHeight(node.right));
+        node.size = 1 + getSize(node.left) + getSize(node.right);
+    }
+
+    Node<T> newNode(T value) {
+        return new Node<>(value);
+    }
+
+    // an empty tree of the same kind and ordering, for the parts that split() cuts off
+    AVLTree<T> newTree() {
+        return new AVLTree<>(comparator);
     }
 
     public boolean add(T value) {
+        int oldSize = size;
         root = add(root, value);
-        if (contains(value)) size++;
-        return contains(value);
+        matched = null;
+        return size != oldSize;
     }
 
     private Node<T> add(Node<T> node, T value) {
-        if (node == null) return new Node<>(value);
-        int comparison = node.value.compareTo(value);
+        if (node == null) {
+            size++;
+            return matched = newNode(value);
+        }
+        int comparison = compare(node.value, value);
         if (comparison > 0) {
             node.left = add(node.left, value);
         } else if (comparison < 0) {
             node.right = add(node.right, value);
         } else {
-            throw new RuntimeException("duplicate Value!");
+            matched = node;
+            return node;
         }
         node = rebalanceTree(node);
         return node;
     }
 
+    /*
+        node-level access for AVLTreeMap, whose nodes carry a mapped value next to the key. Each is a
+        single descent by the key itself, and a removed node keeps its value and anything hung on it
+     */
+
+    // the node holding a value equal to value, added first if there was none
+    Node<T> addOrGetNode(T value) {
+        root = add(root, value);
+        Node<T> node = matched;
+        matched = null;
+        return node;
+    }
+
+    // the node holding a value equal to value, or null
+    Node<T> getNode(Object value) {
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = compare(value, node.value);
+            if (comparison == 0) return node;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    // unlinks the node holding a value equal to value and returns it, or null if there was none
+    Node<T> removeNode(Object value) {
+        @SuppressWarnings("unchecked")
+        T t = (T) value;
+        root = remove(root, t);
+        Node<T> removed = matched;
+        matched = null;
+        return removed;
+    }
+
+    /*
+        a seek remembers the path it took, so that AVLTreeMap's compute and merge can run the
+        user's function between finding a key and inserting or unlinking it, without a second
+        descent. The relink rebalances bottom up along that path, exactly as add and remove do on
+        their way out of the recursion
+     */
+
+    // the node holding a value equal to value, or null; either way the path to it is kept
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Node<T> seek(Object value) {
+        if (seekPath == null || seekPath.length < getHeight(root)) {
+            seekPath = (Node<T>[]) new Node[Math.max(8, getHeight(root))];
+            seekLeft = new boolean[seekPath.length];
+        }
+        sought = value;
+        seekDepth = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = compare(value, node.value);
+            if (comparison == 0) return node;
+            seekPath[seekDepth] = node;
+            seekLeft[seekDepth++] = comparison < 0;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    // links a new node for value where the last seek, which found nothing, ended
+    Node<T> insertAtSeek(T value) {
+        checkSeekPath(null);
+        // another seek may have ended at the same empty slot, so the value is checked as well
+        if (value != sought && compare(value, sought) != 0) throw new ConcurrentModificationException();
+        Node<T> node = newNode(value);
+        size++;
+        relinkSeekPath(node);
+        return node;
+    }
+
+    // unlinks node, which the last seek found
+    void removeAtSeek(Node<T> node) {
+        checkSeekPath(node);
+        size--;
+        Node<T> replacement = unlink(node);
+        relinkSeekPath(replacement == null ? null : rebalanceTree(replacement));
+    }
+
+    // a function run since the seek may have changed the tree, which would leave the path stale
+    private void checkSeekPath(Node<T> end) {
+        if (seekDepth < 0) throw new ConcurrentModificationException();
+        Node<T> node = root;
+        for (int i = 0; i < seekDepth; i++) {
+            if (node != seekPath[i]) throw new ConcurrentModificationException();
+            node = seekLeft[i] ? node.left : node.right;
+        }
+        if (node != end) throw new ConcurrentModificationException();
+    }
+
+    private void relinkSeekPath(Node<T> child) {
+        for (int i = seekDepth - 1; i >= 0; i--) {
+            Node<T> node = seekPath[i];
+            if (seekLeft[i]) node.left = child;
+            else node.right = child;
+            child = rebalanceTree(node);
+            seekPath[i] = null;
+        }
+        root = child;
+        sought = null;
+        seekDepth = -1;
+    }
+
     @Override
     public boolean remove(Object o) {
         if (root == null) return false; // doesn't contain or root is null
         @SuppressWarnings("unchecked")
         T t = (T) o;
+        int oldSize = size;
         root = remove(root, t);
-        if (!contains(t)) {
-            size--;
-            return true;
-        }
-        return false;
+        matched = null;
+        return size != oldSize;
     }
 
     private Node<T> remove(Node<T> node, T value) {
-        if (node == null) return new Node<>(value);
-        int comparison = node.value.compareTo(value);
+        if (node == null) return null;
+        int comparison = compare(node.value, value);
         if (comparison > 0) {
             node.left = remove(node.left, value);
         } else if (comparison < 0) {
             node.right = remove(node.right, value);
         } else {
-            if (node.left == null || node.right == null) {
-                node = (node.left == null) ? node.right : node.left;
-            } else {
-                Node<T> mostLeftChild = mostLeftChild(node.right);
-                node.value = mostLeftChild.value;
-                node.right = remove(node.right, node.value);
-            }
+            size--;
+            matched = node;
+            node = unlink(node);
         }
         if (node != null) {
             node = rebalanceTree(node);
@@ -92,6 +477,22 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
         return node;
     }
 
+    // the subtree that takes node's place, still to be rebalanced at its root; the successor node
+    // moves up rather than its value, so no node ever changes its value
+    private Node<T> unlink(Node<T> node) {
+        if (node.left == null || node.right == null) return node.left == null ? node.right : node.left;
+        Node<T> mostLeftChild = mostLeftChild(node.right);
+        mostLeftChild.right = removeMostLeftChild(node.right);
+        mostLeftChild.left = node.left;
+        return mostLeftChild;
+    }
+
+    private Node<T> removeMostLeftChild(Node<T> node) {
+        if (node.left == null) return node.right;
+        node.left = removeMostLeftChild(node.left);
+        return rebalanceTree(node);
+    }
+
 
     /*
           a                c
@@ -102,18 +503,15 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
 
     */
     private Node<T> rotateLeftSmall (Node<T> node) {
-        Node<T> b = node.left;
         Node<T> c = node.right;
-        Node<T> d = node.right.left;
-        Node<T> e = node.right.right;
+        Node<T> d = c.left;
 
-        Node<T> n = new Node<>(c.value);
-        n.left = node;
-        n.right = e;
-        n.left.left = b;
-        n.left.right = d;
+        node.right = d;
+        c.left = node;
 
-        return n;
+        update(node);
+        update(c);
+        return c;
     }
 
     /*
@@ -127,22 +525,20 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
 
      */
     private Node<T> rotateLeftLarge (Node<T> node) {
-        Node<T> b = node.left;
         Node<T> c = node.right;
-        Node<T> d = node.right.left;
-        Node<T> e = node.right.right;
-        Node<T> f = node.right.left.left;
-        Node<T> g = node.right.left.right;
-
-        Node<T> n = new Node<>(d.value);
-        n.left = node;
-        n.right = c;
-        n.left.left = b;
-        n.left.right = f;
-        n.right.left = g;
-        n.right.right = e;
-
-        return n;
+        Node<T> d = c.left;
+        Node<T> f = d.left;
+        Node<T> g = d.right;
+
+        node.right = f;
+        c.left = g;
+        d.left = node;
+        d.right = c;
+
+        update(node);
+        update(c);
+        update(d);
+        return d;
     }
 
     /*
@@ -155,17 +551,14 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
     */
     private Node<T> rotateRightSmall (Node<T> node) {
         Node<T> b = node.left;
-        Node<T> c = node.right;
-        Node<T> d = node.left.left;
-        Node<T> e = node.left.right;
+        Node<T> e = b.right;
 
-        Node<T> n = new Node<>(b.value);
-        n.right = node;
-        n.left = d;
-        n.right.left = e;
-        n.right.right = c;
+        node.left = e;
+        b.right = node;
 
-        return n;
+        update(node);
+        update(b);
+        return b;
     }
 
     /*
@@ -180,21 +573,19 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
          */
     private Node<T> rotateRightLarge (Node<T> node) {
         Node<T> b = node.left;
-        Node<T> c = node.right;
-        Node<T> d = node.left.left;
-        Node<T> e = node.left.right;
-        Node<T> f = node.left.right.left;
-        Node<T> g = node.left.right.right;
-
-        Node<T> n = new Node<>(e.value);
-        n.left = b;
-        n.right = node;
-        n.left.left = d;
-        n.left.right = f;
-        n.right.left = g;
-        n.right.right = c;
-
-        return n;
+        Node<T> e = b.right;
+        Node<T> f = e.left;
+        Node<T> g = e.right;
+
+        b.right = f;
+        node.left = g;
+        e.left = b;
+        e.right = node;
+
+        update(b);
+        update(node);
+        update(e);
+        return e;
     }
 
     private Node<T> rebalanceTree (Node<T> node) {
@@ -216,6 +607,7 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
                 }
             }
         }
+        update(node);
         return node;
     }
 
@@ -234,7 +626,7 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
     }
 
     private Node<T> find(Node<T> start, T value) {
-        int comparison = value.compareTo(start.value);
+        int comparison = compare(value, start.value);
         if (comparison == 0) {
             return start;
         }
@@ -248,239 +640,1234 @@ public class AVLTree <T extends Comparable<T>> extends AbstractSet<T> implements
         }
     }
 
-    public Iterator<T> iterator() {
-        return new BinarySearchTreeIterator();
+    public int rank(T value) {
+        return rank(value, false);
     }
 
-    public class BinarySearchTreeIterator implements Iterator<T> {
-        private final Stack<Node<T>> nodesStack = new Stack<>();
-        Node<T> currentNode;
-
-        private BinarySearchTreeIterator() {
-            addLeftBranch(root);
-        }
-
-        private void addLeftBranch(Node<T> n) {
-            if (n != null) {
-                nodesStack.push(n);
-                addLeftBranch(n.left);
+    private int rank(T value, boolean inclusive) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = compare(value, node.value);
+            if (comparison > 0) {
+                rank += getSize(node.left) + 1;
+                node = node.right;
+            } else if (comparison < 0) {
+                node = node.left;
+            } else {
+                return rank + getSize(node.left) + (inclusive ? 1 : 0);
             }
         }
+        return rank;
+    }
 
-        @Override
-        public boolean hasNext() {
-            return !nodesStack.isEmpty();
+    public T select(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        Node<T> node = root;
+        while (true) {
+            int leftSize = getSize(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
         }
+    }
 
-        @Override
-        public T next() {
-            if (!hasNext()) throw new NoSuchElementException();
-
-            currentNode = nodesStack.pop();
-            Node<T> workOutNode = currentNode;
+    public T get(int index) {
+        return select(index);
+    }
 
-            addLeftBranch(workOutNode.right);
-            return workOutNode.value;
+    Node<T> lowerNode(T value, boolean inclusive) {
+        Node<T> result = null;
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = compare(value, node.value);
+            if (comparison == 0 && inclusive) return node;
+            if (comparison > 0) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
+        return result;
+    }
 
-        @Override
-        public void remove() {
-            if (currentNode == null) throw new IllegalStateException();
-            AVLTree.this.remove(currentNode, currentNode.value);
-            currentNode = null;
-            size--;
+    Node<T> higherNode(T value, boolean inclusive) {
+        Node<T> result = null;
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = compare(value, node.value);
+            if (comparison == 0 && inclusive) return node;
+            if (comparison < 0) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
         }
+        return result;
     }
 
-    @Override
-    public Comparator<? super T> comparator() {
-        return (Comparator<T>) Comparable::compareTo;
+    private T valueOf(Node<T> node) {
+        return node == null ? null : node.value;
     }
 
     @Override
-    public boolean containsAll(Collection<?> c) {
-        for (Object element : c){
-            if (!contains(element)) return false;
-        }
-        return true;
+    public T lower(T value) {
+        return valueOf(lowerNode(value, false));
     }
 
     @Override
-    public boolean addAll(Collection<? extends T> c) {
-        for (T t : c){
-            this.add(t);
-        }
-        return containsAll(c);
+    public T floor(T value) {
+        return valueOf(lowerNode(value, true));
     }
 
     @Override
-    public boolean retainAll(Collection<?> c) {
-        if (this.containsAll(c)) {
-            for (Object t : this) {
-                if (!c.contains(t)) remove(t);
-            }
-            return true;
-        } else return false;
+    public T ceiling(T value) {
+        return valueOf(higherNode(value, true));
     }
 
     @Override
-    public boolean removeAll(Collection<?> c) {
-        if (this.containsAll(c)) {
-            for (Object t : c) remove(t);
-            return true;
-        } else return false;
-
+    public T higher(T value) {
+        return valueOf(higherNode(value, false));
     }
 
     @Override
-    public void clear() {
-        root = null;
-        size = 0;
+    public T pollFirst() {
+        if (root == null) return null;
+        T value = first();
+        remove(value);
+        return value;
     }
 
     @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        if (fromElement.compareTo(toElement) >= 0) throw new IllegalArgumentException();
-        return new SubAVLTree(fromElement, toElement, this);
+    public T pollLast() {
+        if (root == null) return null;
+        T value = last();
+        remove(value);
+        return value;
     }
 
-    @Override
-    public SortedSet<T> headSet(T toElement) {
-        return new SubAVLTree(null, toElement, this);
+    public BinarySearchTreeIterator iterator() {
+        return new BinarySearchTreeIterator();
     }
 
     @Override
-    public SortedSet<T> tailSet(T fromElement) {
-        return new SubAVLTree(fromElement, null, this);
+    public BinarySearchTreeIterator descendingIterator() {
+        return new BinarySearchTreeIterator(true, true, null, false, true, null, false);
     }
 
-    private class SubAVLTree extends AVLTree<T> {
-        final T bottom;
-        final T top;
-        AVLTree<T> avlTree;
+    public class BinarySearchTreeIterator implements Iterator<T> {
+        private final boolean descending;
+        private final boolean toEnd;
+        private final T fence;
+        private final boolean fenceInclusive;
+        private Node<T>[] nodesStack;
+        private int depth;
+        Node<T> currentNode;
 
-        private SubAVLTree(T bottom, T top, AVLTree<T> avlTree) {
-            this.bottom = bottom;
-            this.top = top;
-            this.avlTree = avlTree;
+        private BinarySearchTreeIterator() {
+            this(false, true, null, false, true, null, false);
         }
 
-        private boolean check(T value) {
-            return (bottom != null && top != null &&
-                    value.compareTo(bottom) >= 0 && value.compareTo(top) < 0) ||
-                    (bottom == null && value.compareTo(top) < 0) ||
-                    (top == null && value.compareTo(bottom) >= 0);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private BinarySearchTreeIterator(Node<T> subtree) {
+            this.descending = false;
+            this.toEnd = true;
+            this.fence = null;
+            this.fenceInclusive = false;
+            nodesStack = (Node<T>[]) new Node[Math.max(1, getHeight(subtree))];
+            addBranch(subtree);
         }
 
-        @Override
-        public int size() {
-            if (avlTree == null) return 0;
-            int count = 0;
-            for (T value : avlTree)
-                if (check(value)) count++;
-            return count;
+        // walks from the first value past start up to fence; fromStart and toEnd leave a side open
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private BinarySearchTreeIterator(boolean descending, boolean fromStart, T start, boolean startInclusive,
+                                         boolean toEnd, T fence, boolean fenceInclusive) {
+            this.descending = descending;
+            this.toEnd = toEnd;
+            this.fence = fence;
+            this.fenceInclusive = fenceInclusive;
+            // an in-order stack never holds more than one root-to-leaf path
+            nodesStack = (Node<T>[]) new Node[Math.max(1, getHeight(root))];
+            if (fromStart) {
+                addBranch(root);
+            } else {
+                seek(start, startInclusive);
+            }
         }
 
-        @Override
-        public boolean contains(Object o) {
-            @SuppressWarnings("unchecked")
-            T t = (T) o;
-            return check(t) && avlTree.contains(t);
+        private void addBranch(Node<T> n) {
+            while (n != null) {
+                push(n);
+                n = descending ? n.right : n.left;
+            }
         }
 
-        @Override
-        public boolean add(T value) {
-            if (!check(value))
-                throw new IllegalArgumentException();
-            return avlTree.add(value);
+        private void seek(T value, boolean inclusive) {
+            depth = 0;
+            Node<T> n = root;
+            while (n != null) {
+                int comparison = compare(n.value, value);
+                if (descending) comparison = -comparison;
+                if (comparison > 0 || (comparison == 0 && inclusive)) {
+                    push(n);
+                    n = descending ? n.right : n.left;
+                } else {
+                    n = descending ? n.left : n.right;
+                }
+            }
         }
 
-        @Override
-        public boolean remove(Object o) {
-            @SuppressWarnings("unchecked")
-            T value = (T) o;
-            if (!check(value))
-                throw new IllegalArgumentException();
-            return avlTree.remove(value);
+        private void push(Node<T> n) {
+            if (depth == nodesStack.length) nodesStack = Arrays.copyOf(nodesStack, depth * 2);
+            nodesStack[depth++] = n;
         }
 
-        public Iterator<T> iterator() {
-            return new SubAVLTree.BinarySearchTreeIterator();
+        @Override
+        public boolean hasNext() {
+            if (depth == 0) return false;
+            if (toEnd) return true;
+            int comparison = compare(nodesStack[depth - 1].value, fence);
+            if (descending) comparison = -comparison;
+            return comparison < 0 || (comparison == 0 && fenceInclusive);
         }
 
-        public class BinarySearchTreeIterator implements Iterator<T> {
-            private final Stack<Node<T>> nodesStack = new Stack<>();
-            Node<T> currentNode;
-
-            private BinarySearchTreeIterator() {
-                addLeftBranch(root);
-            }
-
-            private void addLeftBranch(Node<T> n) {
-                if (n != null && check(n.value)) {
-                    nodesStack.push(n);
-                    addLeftBranch(n.left);
-                }
-            }
+        @Override
+        public T next() {
+            return nextNode().value;
+        }
 
-            @Override
-            public boolean hasNext() {
-                return !nodesStack.isEmpty();
-            }
+        Node<T> nextNode() {
+            if (!hasNext()) throw new NoSuchElementException();
 
-            @Override
-            public T next() {
-                if (!hasNext()) throw new NoSuchElementException();
+            currentNode = nodesStack[--depth];
+            addBranch(descending ? currentNode.left : currentNode.right);
+            return currentNode;
+        }
 
-                currentNode = nodesStack.pop();
-                Node<T> workOutNode = currentNode;
+        @Override
+        public void remove() {
+            if (currentNode == null) throw new IllegalStateException();
+            T value = currentNode.value;
+            AVLTree.this.remove(value);
+            currentNode = null;
 
-                addLeftBranch(workOutNode.right);
-                return workOutNode.value;
-            }
+            // rotations may have moved the remaining nodes, so rebuild the stack of the successor
+            seek(value, false);
+        }
+    }
 
-            @Override
-            public void remove() {
-                if (currentNode == null) throw new IllegalStateException();
-                avlTree.remove(currentNode, currentNode.value);
-            }
+    @Override
+    public Spliterator<T> spliterator() {
+        return new BinarySearchTreeSpliterator(null, root);
+    }
 
+    /*
+        covers head on its own followed by the whole subtree under tail; splitting hands off
+        head + tail.left and keeps tail + tail.right, so both halves know their exact size
+     */
+    public class BinarySearchTreeSpliterator implements Spliterator<T> {
+        private Node<T> head;
+        private Node<T> tail;
+        private BinarySearchTreeIterator iterator;
+        private long remaining;
+
+        private BinarySearchTreeSpliterator(Node<T> head, Node<T> tail) {
+            this.head = head;
+            this.tail = tail;
+            this.remaining = (head == null ? 0 : 1) + getSize(tail);
         }
+
         @Override
-        public T first() {
-            for (T value : avlTree)
-                if (check(value)) return value;
-            throw new NoSuchElementException();
+        public Spliterator<T> trySplit() {
+            if (iterator != null || tail == null) return null;
+            if (head == null && tail.left == null) return null;
+            BinarySearchTreeSpliterator prefix = new BinarySearchTreeSpliterator(head, tail.left);
+            head = tail;
+            tail = tail.right;
+            remaining -= prefix.remaining;
+            return prefix;
         }
 
         @Override
-        public T last() {
-            T result = null;
-            for (T value : avlTree)
-                if (check(value)) result = value;
-            if (result == null) throw new NoSuchElementException();
-            return result;
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            if (head != null) {
+                T value = head.value;
+                head = null;
+                remaining--;
+                action.accept(value);
+                return true;
+            }
+            if (iterator == null) iterator = new BinarySearchTreeIterator(tail);
+            if (!iterator.hasNext()) return false;
+            remaining--;
+            action.accept(iterator.next());
+            return true;
         }
-    }
 
-    @Override
-    public T first() {
-        if (root == null) throw new NoSuchElementException();
-        Node<T> currentNode = root;
-        while (currentNode.left != null) {
-            currentNode = currentNode.left;
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (action == null) throw new NullPointerException();
+            if (head != null) {
+                action.accept(head.value);
+                head = null;
+            }
+            if (iterator == null) {
+                forEach(tail, action);
+                tail = null;
+            } else {
+                while (iterator.hasNext()) action.accept(iterator.next());
+            }
+            remaining = 0;
+        }
+
+        private void forEach(Node<T> node, Consumer<? super T> action) {
+            while (node != null) {
+                forEach(node.left, action);
+                action.accept(node.value);
+                node = node.right;
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            // a comparator may accept null values, natural ordering never does
+            int characteristics = comparator == null ? Spliterator.NONNULL : 0;
+            return characteristics | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED
+                    | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator;
         }
-        return currentNode.value;
     }
 
     @Override
-    public T last() {
-        if (root == null) throw new NoSuchElementException();
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object element : c){
+            if (!contains(element)) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        if (root == null && !c.isEmpty() && hasSameOrder(c)) {
+            root = buildFromSorted(c.iterator(), 0, c.size() - 1);
+            size = c.size();
+            return true;
+        }
+        return addEach(c);
+    }
+
+    private boolean hasSameOrder(Collection<?> c) {
+        return c instanceof SortedSet && Objects.equals(((SortedSet<?>) c).comparator(), comparator);
+    }
+
+    boolean addEach(Collection<? extends T> c) {
+        boolean modified = false;
+        for (T t : c){
+            if (this.add(t)) modified = true;
+        }
+        return modified;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean retainAll(Collection<?> c) {
+        if (c instanceof AVLTree && hasSameOrder(c)) return intersection((AVLTree<T>) c);
+        return retainEach(c);
+    }
+
+    boolean retainEach(Collection<?> c) {
+        boolean modified = false;
+        Iterator<T> iterator = iterator();
+        while (iterator.hasNext()) {
+            if (!c.contains(iterator.next())) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean removeAll(Collection<?> c) {
+        if (c instanceof AVLTree && hasSameOrder(c)) return difference((AVLTree<T>) c);
+        return removeEach(c);
+    }
+
+    boolean removeEach(Collection<?> c) {
+        boolean modified = false;
+        for (Object t : c) {
+            if (remove(t)) modified = true;
+        }
+        return modified;
+    }
+
+    // removes every value >= key from this tree and returns them as a new tree, in O(log n)
+    public AVLTree<T> split(T key) {
+        Split<T> split = new Split<>();
+        split(root, key, split);
+        AVLTree<T> tail = newTree();
+        tail.root = split.middle == null ? split.right : join(null, split.middle, split.right);
+        tail.size = getSize(tail.root);
+        root = split.left;
+        size = getSize(root);
+        return tail;
+    }
+
+    // moves every value of other, all of which must be greater than last(), into this tree in O(log n)
+    public void join(AVLTree<T> other) {
+        if (other.root == null) return;
+        if (!hasSameOrder(other)) throw new IllegalArgumentException("joined tree must have the same ordering");
+        if (root != null && compare(last(), other.first()) >= 0) {
+            throw new IllegalArgumentException("joined tree must be greater than this tree");
+        }
+        root = join2(root, other.root);
+        size = getSize(root);
+        other.clear();
+    }
+
+    // the set operations below take O(m log(n / m + 1)) and leave other unchanged
+
+    public boolean union(AVLTree<T> other) {
+        if (!hasSameOrder(other)) return addEach(other);
+        int oldSize = size;
+        root = union(root, viewAsTree(other).root);
+        size = getSize(root);
+        return size != oldSize;
+    }
+
+    public boolean intersection(AVLTree<T> other) {
+        if (!hasSameOrder(other)) return retainEach(other);
+        int oldSize = size;
+        root = intersection(root, viewAsTree(other).root);
+        size = getSize(root);
+        return size != oldSize;
+    }
+
+    public boolean difference(AVLTree<T> other) {
+        if (!hasSameOrder(other)) return removeEach(other);
+        int oldSize = size;
+        root = difference(root, viewAsTree(other).root);
+        size = getSize(root);
+        return size != oldSize;
+    }
+
+    private AVLTree<T> viewAsTree(AVLTree<T> tree) {
+        if (!(tree instanceof AVLTree.SubAVLTree)) return tree;
+        return fromSorted(tree.iterator(), tree.size(), comparator);
+    }
+
+    private static class Split<T> {
+        Node<T> left;
+        Node<T> middle;
+        Node<T> right;
+    }
+
+    private void split(Node<T> node, T key, Split<T> result) {
+        if (node == null) {
+            result.left = result.middle = result.right = null;
+            return;
+        }
+        Node<T> left = node.left;
+        Node<T> right = node.right;
+        int comparison = compare(key, node.value);
+        if (comparison < 0) {
+            split(left, key, result);
+            result.right = join(result.right, node, right);
+        } else if (comparison > 0) {
+            split(right, key, result);
+            result.left = join(left, node, result.left);
+        } else {
+            result.left = left;
+            result.middle = node;
+            result.right = right;
+        }
+    }
+
+    // links left < middle < right into one tree, walking down the taller side only
+    private Node<T> join(Node<T> left, Node<T> middle, Node<T> right) {
+        if (getHeight(left) > getHeight(right) + 1) return joinRight(left, middle, right);
+        if (getHeight(right) > getHeight(left) + 1) return joinLeft(left, middle, right);
+        middle.left = left;
+        middle.right = right;
+        update(middle);
+        return middle;
+    }
+
+    private Node<T> joinRight(Node<T> left, Node<T> middle, Node<T> right) {
+        if (getHeight(left.right) <= getHeight(right) + 1) {
+            middle.left = left.right;
+            middle.right = right;
+            update(middle);
+            left.right = middle;
+        } else {
+            left.right = joinRight(left.right, middle, right);
+        }
+        return rebalanceTree(left);
+    }
+
+    private Node<T> joinLeft(Node<T> left, Node<T> middle, Node<T> right) {
+        if (getHeight(right.left) <= getHeight(left) + 1) {
+            middle.left = left;
+            middle.right = right.left;
+            update(middle);
+            right.left = middle;
+        } else {
+            right.left = joinLeft(left, middle, right.left);
+        }
+        return rebalanceTree(right);
+    }
+
+    private Node<T> join2(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        Node<T> middle = mostLeftChild(right);
+        return join(left, middle, removeMostLeftChild(right));
+    }
+
+    private Node<T> union(Node<T> node, Node<T> other) {
+        if (other == null) return node;
+        if (node == null) return copy(other);
+        Split<T> split = new Split<>();
+        split(node, other.value, split);
+        Node<T> left = union(split.left, other.left);
+        Node<T> right = union(split.right, other.right);
+        return join(left, split.middle == null ? newNode(other.value) : split.middle, right);
+    }
+
+    private Node<T> intersection(Node<T> node, Node<T> other) {
+        if (node == null || other == null) return null;
+        Split<T> split = new Split<>();
+        split(node, other.value, split);
+        Node<T> left = intersection(split.left, other.left);
+        Node<T> right = intersection(split.right, other.right);
+        return split.middle == null ? join2(left, right) : join(left, split.middle, right);
+    }
+
+    private Node<T> difference(Node<T> node, Node<T> other) {
+        if (node == null || other == null) return node;
+        Split<T> split = new Split<>();
+        split(node, other.value, split);
+        Node<T> left = difference(split.left, other.left);
+        Node<T> right = difference(split.right, other.right);
+        return join2(left, right);
+    }
+
+    /*
+        applies both batches, each strictly ascending, in one recursion over the tree: the middle key
+        of the larger batch splits the tree and the other batch, both halves recurse and are joined
+        back, so every touched subtree is rebalanced once. A key in both batches is deleted first
+        and then inserted again, like the equivalent removeAll followed by addAll
+     */
+    public BatchResult applyBatch(Collection<? extends T> sortedInserts, Collection<? extends T> sortedDeletes) {
+        Object[] inserts = checkAscending(sortedInserts.toArray());
+        Object[] deletes = checkAscending(sortedDeletes.toArray());
+        BatchResult result = new BatchResult(inserts.length, deletes.length);
+        root = applyBatch(root, inserts, 0, inserts.length, deletes, 0, deletes.length, result);
+        size = getSize(root);
+        return result;
+    }
+
+    // the same outcomes as applyBatch, one add or remove at a time
+    BatchResult applyEach(Collection<? extends T> sortedInserts, Collection<? extends T> sortedDeletes) {
+        Object[] inserts = checkAscending(sortedInserts.toArray());
+        Object[] deletes = checkAscending(sortedDeletes.toArray());
+        BatchResult result = new BatchResult(inserts.length, deletes.length);
+        for (int i = 0; i < deletes.length; i++) {
+            result.deleted[i] = remove(deletes[i]);
+        }
+        for (int i = 0; i < inserts.length; i++) {
+            @SuppressWarnings("unchecked")
+            T value = (T) inserts[i];
+            result.inserted[i] = add(value);
+        }
+        return result;
+    }
+
+    public static class BatchResult {
+        private final boolean[] inserted;
+        private final boolean[] deleted;
+
+        private BatchResult(int inserts, int deletes) {
+            inserted = new boolean[inserts];
+            deleted = new boolean[deletes];
+        }
+
+        // whether the i-th insert was absent from the tree once the deletes were applied
+        public boolean inserted(int i) {
+            return inserted[i];
+        }
+
+        // whether the i-th delete found its key in the tree
+        public boolean deleted(int i) {
+            return deleted[i];
+        }
+
+        public int insertedCount() {
+            return count(inserted);
+        }
+
+        public int deletedCount() {
+            return count(deleted);
+        }
+
+        private static int count(boolean[] outcomes) {
+            int count = 0;
+            for (boolean outcome : outcomes) {
+                if (outcome) count++;
+            }
+            return count;
+        }
+    }
+
+    private Object[] checkAscending(Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null && comparator == null) throw new NullPointerException();
+            if (i > 0 && compare(values[i - 1], values[i]) >= 0) {
+                throw new IllegalArgumentException("batch is not strictly ascending at index " + i);
+            }
+        }
+        return values;
+    }
+
+    // index of the first value in values[lo, hi) that is >= key
+    private int lowerBound(Object[] values, int lo, int hi, Object key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(values[mid], key) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private Node<T> applyBatch(Node<T> node, Object[] inserts, int insertsFrom, int insertsTo,
+                               Object[] deletes, int deletesFrom, int deletesTo, BatchResult result) {
+        if (insertsFrom == insertsTo && deletesFrom == deletesTo) return node;
+        if (insertsFrom == insertsTo && node == null) return null;
+        int insertAt, deleteAt;
+        Object key;
+        if (insertsTo - insertsFrom >= deletesTo - deletesFrom) {
+            insertAt = (insertsFrom + insertsTo) >>> 1;
+            key = inserts[insertAt];
+            deleteAt = lowerBound(deletes, deletesFrom, deletesTo, key);
+        } else {
+            deleteAt = (deletesFrom + deletesTo) >>> 1;
+            key = deletes[deleteAt];
+            insertAt = lowerBound(inserts, insertsFrom, insertsTo, key);
+        }
+        boolean inserting = insertAt < insertsTo && compare(inserts[insertAt], key) == 0;
+        boolean deleting = deleteAt < deletesTo && compare(deletes[deleteAt], key) == 0;
+
+        Split<T> split = new Split<>();
+        @SuppressWarnings("unchecked")
+        T value = (T) key;
+        split(node, value, split);
+        Node<T> middle = split.middle;
+        Node<T> right = split.right;
+        Node<T> left = applyBatch(split.left, inserts, insertsFrom, insertAt,
+                deletes, deletesFrom, deleteAt, result);
+        right = applyBatch(right, inserts, inserting ? insertAt + 1 : insertAt, insertsTo,
+                deletes, deleting ? deleteAt + 1 : deleteAt, deletesTo, result);
+
+        if (deleting) {
+            result.deleted[deleteAt] = middle != null;
+            middle = null;
+        }
+        if (inserting) {
+            result.inserted[insertAt] = middle == null;
+            if (middle == null) middle = newNode(value);
+        }
+        return middle == null ? join2(left, right) : join(left, middle, right);
+    }
+
+    private Node<T> copy(Node<T> node) {
+        if (node == null) return null;
+        Node<T> n = newNode(node.value);
+        n.left = copy(node.left);
+        n.right = copy(node.right);
+        update(n);
+        return n;
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    // sorts c on the common fork/join pool, merges it with the current values and rebuilds in one pass
+    public boolean parallelAddAll(Collection<? extends T> c) {
+        Object[] incoming = c.toArray();
+        if (incoming.length == 0) return false;
+        Arrays.parallelSort(incoming, (a, b) -> compare(a, b));
+        Object[] values = merge(flatten(), incoming);
+        if (values.length == size) return false;
+        root = ForkJoinPool.commonPool().invoke(new BuildTask(values, 0, values.length - 1));
+        size = values.length;
+        return true;
+    }
+
+    // visits disjoint subtrees on the common fork/join pool, in no particular order
+    public void parallelForEach(Consumer<? super T> action) {
+        if (action == null) throw new NullPointerException();
+        if (root != null) ForkJoinPool.commonPool().invoke(new ForEachTask(root, action));
+    }
+
+    // tests every value in parallel and rebuilds the survivors into a balanced tree in one pass
+    public boolean parallelRemoveIf(Predicate<? super T> filter) {
+        if (filter == null) throw new NullPointerException();
+        @SuppressWarnings("unchecked")
+        Object[] values = Arrays.stream(flatten()).parallel().filter(value -> !filter.test((T) value)).toArray();
+        if (values.length == size) return false;
+        root = values.length == 0 ? null : ForkJoinPool.commonPool().invoke(new BuildTask(values, 0, values.length - 1));
+        size = values.length;
+        return true;
+    }
+
+
+    private Object[] flatten() {
+        Object[] values = new Object[size];
+        if (root != null) ForkJoinPool.commonPool().invoke(new FlattenTask(root, values, 0));
+        return values;
+    }
+
+    // merges two ascending arrays, dropping duplicates within and across them
+    private Object[] merge(Object[] values, Object[] incoming) {
+        Object[] merged = new Object[values.length + incoming.length];
+        int i = 0, j = 0, n = 0;
+        while (i < values.length || j < incoming.length) {
+            Object next;
+            if (j == incoming.length) {
+                next = values[i++];
+            } else if (i == values.length) {
+                next = incoming[j++];
+            } else {
+                int comparison = compare(values[i], incoming[j]);
+                next = comparison <= 0 ? values[i++] : incoming[j++];
+            }
+            if (n == 0 || compare(merged[n - 1], next) != 0) merged[n++] = next;
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private class FlattenTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<T> node;
+        private final Object[] values;
+        private final int offset;
+
+        FlattenTask(Node<T> node, Object[] values, int offset) {
+            this.node = node;
+            this.values = values;
+            this.offset = offset;
+        }
+
+        @Override
+        protected void compute() {
+            if (node.size <= PARALLEL_THRESHOLD) {
+                flatten(node, offset);
+                return;
+            }
+            int middle = offset + getSize(node.left);
+            values[middle] = node.value;
+            FlattenTask left = new FlattenTask(node.left, values, offset);
+            left.fork();
+            new FlattenTask(node.right, values, middle + 1).compute();
+            left.join();
+        }
+
+        private int flatten(Node<T> n, int position) {
+            while (n != null) {
+                position = flatten(n.left, position);
+                values[position++] = n.value;
+                n = n.right;
+            }
+            return position;
+        }
+    }
+
+    private class BuildTask extends RecursiveTask<Node<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] values;
+        private final int lo;
+        private final int hi;
+
+        BuildTask(Object[] values, int lo, int hi) {
+            this.values = values;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected Node<T> compute() {
+            if (hi - lo < PARALLEL_THRESHOLD) return build(lo, hi);
+            int mid = (lo + hi) >>> 1;
+            BuildTask left = new BuildTask(values, lo, mid - 1);
+            left.fork();
+            Node<T> right = new BuildTask(values, mid + 1, hi).compute();
+            return link(mid, left.join(), right);
+        }
+
+        private Node<T> build(int lo, int hi) {
+            if (lo > hi) return null;
+            int mid = (lo + hi) >>> 1;
+            return link(mid, build(lo, mid - 1), build(mid + 1, hi));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> link(int mid, Node<T> left, Node<T> right) {
+            Node<T> node = newNode((T) values[mid]);
+            node.left = left;
+            node.right = right;
+            update(node);
+            return node;
+        }
+    }
+
+    private class ForEachTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Node<T> node;
+        private final Consumer<? super T> action;
+
+        ForEachTask(Node<T> node, Consumer<? super T> action) {
+            this.node = node;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (node == null || node.size <= PARALLEL_THRESHOLD) {
+                forEach(node);
+                return;
+            }
+            ForEachTask left = new ForEachTask(node.left, action);
+            left.fork();
+            action.accept(node.value);
+            new ForEachTask(node.right, action).compute();
+            left.join();
+        }
+
+        private void forEach(Node<T> n) {
+            while (n != null) {
+                forEach(n.left);
+                action.accept(n.value);
+                n = n.right;
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public AVLTree<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+        return new SubAVLTree(false, fromElement, fromInclusive, false, toElement, toInclusive, this);
+    }
+
+    @Override
+    public AVLTree<T> headSet(T toElement, boolean inclusive) {
+        if (toElement == null && comparator == null) throw new NullPointerException();
+        return new SubAVLTree(true, null, false, false, toElement, inclusive, this);
+    }
+
+    @Override
+    public AVLTree<T> tailSet(T fromElement, boolean inclusive) {
+        if (fromElement == null && comparator == null) throw new NullPointerException();
+        return new SubAVLTree(false, fromElement, inclusive, true, null, false, this);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return new DescendingAVLTree<>(this);
+    }
+
+    // fromStart and toEnd mark an open side, as null may be a value under a comparator
+    private class SubAVLTree extends AVLTree<T> {
+        final boolean fromStart;
+        final T bottom;
+        final boolean bottomInclusive;
+        final boolean toEnd;
+        final T top;
+        final boolean topInclusive;
+        AVLTree<T> avlTree;
+
+        private SubAVLTree(boolean fromStart, T bottom, boolean bottomInclusive,
+                           boolean toEnd, T top, boolean topInclusive, AVLTree<T> avlTree) {
+            super(avlTree.comparator);
+            this.fromStart = fromStart;
+            this.toEnd = toEnd;
+            this.bottom = bottom;
+            this.bottomInclusive = bottomInclusive;
+            this.top = top;
+            this.topInclusive = topInclusive;
+            this.avlTree = avlTree;
+        }
+
+        private boolean tooLow(T value) {
+            if (fromStart) return false;
+            int comparison = compare(value, bottom);
+            return comparison < 0 || (comparison == 0 && !bottomInclusive);
+        }
+
+        private boolean tooHigh(T value) {
+            if (toEnd) return false;
+            int comparison = compare(value, top);
+            return comparison > 0 || (comparison == 0 && !topInclusive);
+        }
+
+        private boolean check(T value) {
+            return !tooLow(value) && !tooHigh(value);
+        }
+
+        private boolean checkBound(T value, boolean inclusive) {
+            if (inclusive) return check(value);
+            return (fromStart || compare(value, bottom) >= 0) && (toEnd || compare(value, top) <= 0);
+        }
+
+        private int lowRank() {
+            return fromStart ? 0 : avlTree.rank(bottom, !bottomInclusive);
+        }
+
+        private int highRank() {
+            return toEnd ? avlTree.size() : avlTree.rank(top, topInclusive);
+        }
+
+        @Override
+        public int size() {
+            if (avlTree == null) return 0;
+            return Math.max(0, highRank() - lowRank());
+        }
+
+        @Override
+        public int rank(T value) {
+            int rank = avlTree.rank(value) - lowRank();
+            return Math.max(0, Math.min(rank, size()));
+        }
+
+        @Override
+        public T select(int index) {
+            int size = size();
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            return avlTree.select(lowRank() + index);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && avlTree.contains(t);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!check(value))
+                throw new IllegalArgumentException();
+            return avlTree.add(value);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            @SuppressWarnings("unchecked")
+            T value = (T) o;
+            if (!check(value))
+                throw new IllegalArgumentException();
+            return avlTree.remove(value);
+        }
+
+        @Override
+        Node<T> addOrGetNode(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return avlTree.addOrGetNode(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<T> getNode(Object value) {
+            return check((T) value) ? avlTree.getNode(value) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<T> removeNode(Object value) {
+            return check((T) value) ? avlTree.removeNode(value) : null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Node<T> seek(Object value) {
+            return check((T) value) ? avlTree.seek(value) : null;
+        }
+
+        @Override
+        Node<T> insertAtSeek(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return avlTree.insertAtSeek(value);
+        }
+
+        @Override
+        void removeAtSeek(Node<T> node) {
+            avlTree.removeAtSeek(node);
+        }
+
+        // lower, floor, ceiling and higher go through the bounded node descents below
+
+        @Override
+        Node<T> firstNode() {
+            Node<T> node = fromStart ? avlTree.firstNode() : avlTree.higherNode(bottom, bottomInclusive);
+            return node == null || tooHigh(node.value) ? null : node;
+        }
+
+        @Override
+        Node<T> lastNode() {
+            Node<T> node = toEnd ? avlTree.lastNode() : avlTree.lowerNode(top, topInclusive);
+            return node == null || tooLow(node.value) ? null : node;
+        }
+
+        @Override
+        Node<T> lowerNode(T value, boolean inclusive) {
+            if (tooHigh(value)) return lastNode();
+            Node<T> node = avlTree.lowerNode(value, inclusive);
+            return node == null || tooLow(node.value) ? null : node;
+        }
+
+        @Override
+        Node<T> higherNode(T value, boolean inclusive) {
+            if (tooLow(value)) return firstNode();
+            Node<T> node = avlTree.higherNode(value, inclusive);
+            return node == null || tooHigh(node.value) ? null : node;
+        }
+
+        @Override
+        public T pollFirst() {
+            Node<T> node = firstNode();
+            if (node == null) return null;
+            avlTree.remove(node.value);
+            return node.value;
+        }
+
+        @Override
+        public T pollLast() {
+            Node<T> node = lastNode();
+            if (node == null) return null;
+            avlTree.remove(node.value);
+            return node.value;
+        }
+
+        @Override
+        public AVLTree<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+            if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+            if (!checkBound(fromElement, fromInclusive) || !checkBound(toElement, toInclusive))
+                throw new IllegalArgumentException();
+            return avlTree.new SubAVLTree(false, fromElement, fromInclusive, false, toElement, toInclusive, avlTree);
+        }
+
+        @Override
+        public AVLTree<T> headSet(T toElement, boolean inclusive) {
+            if (!checkBound(toElement, inclusive)) throw new IllegalArgumentException();
+            return avlTree.new SubAVLTree(fromStart, bottom, bottomInclusive, false, toElement, inclusive, avlTree);
+        }
+
+        @Override
+        public AVLTree<T> tailSet(T fromElement, boolean inclusive) {
+            if (!checkBound(fromElement, inclusive)) throw new IllegalArgumentException();
+            return avlTree.new SubAVLTree(false, fromElement, inclusive, toEnd, top, topInclusive, avlTree);
+        }
+
+        @Override
+        public BinarySearchTreeIterator descendingIterator() {
+            return avlTree.new BinarySearchTreeIterator(true, toEnd, top, topInclusive, fromStart, bottom, bottomInclusive);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return firstNode() == null;
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends T> c) {
+            return addEach(c);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return retainEach(c);
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return removeEach(c);
+        }
+
+        @Override
+        public boolean union(AVLTree<T> other) {
+            return addEach(other);
+        }
+
+        @Override
+        public boolean intersection(AVLTree<T> other) {
+            return retainEach(other);
+        }
+
+        @Override
+        public boolean difference(AVLTree<T> other) {
+            return removeEach(other);
+        }
+
+        // a view has no subtree of its own to cut or link, so split and join move values one at a time
+
+        @Override
+        public AVLTree<T> split(T key) {
+            AVLTree<T> tail = avlTree.newTree();
+            boolean fromBottom = !fromStart && compare(key, bottom) <= 0;
+            Iterator<T> iterator = avlTree.new BinarySearchTreeIterator(false, false, fromBottom ? bottom : key,
+                    !fromBottom || bottomInclusive, toEnd, top, topInclusive);
+            while (iterator.hasNext()) {
+                tail.add(iterator.next());
+                iterator.remove();
+            }
+            return tail;
+        }
+
+        @Override
+        public void join(AVLTree<T> other) {
+            if (other.isEmpty()) return;
+            if (!avlTree.hasSameOrder(other)) throw new IllegalArgumentException("joined tree must have the same ordering");
+            if (!check(other.first()) || !check(other.last())) {
+                throw new IllegalArgumentException("joined tree must lie within this view");
+            }
+            if (!isEmpty() && compare(last(), other.first()) >= 0) {
+                throw new IllegalArgumentException("joined tree must be greater than this tree");
+            }
+            addEach(other);
+            other.clear();
+        }
+
+        @Override
+        public BatchResult applyBatch(Collection<? extends T> sortedInserts, Collection<? extends T> sortedDeletes) {
+            return applyEach(sortedInserts, sortedDeletes);
+        }
+
+        @Override
+        public boolean parallelAddAll(Collection<? extends T> c) {
+            return addEach(c);
+        }
+
+        @Override
+        public void parallelForEach(Consumer<? super T> action) {
+            forEach(action);
+        }
+
+        @Override
+        public boolean parallelRemoveIf(Predicate<? super T> filter) {
+            return removeIf(filter);
+        }
+
+        @Override
+        public void clear() {
+            Iterator<T> iterator = iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+
+        public BinarySearchTreeIterator iterator() {
+            return avlTree.new BinarySearchTreeIterator(false, fromStart, bottom, bottomInclusive, toEnd, top, topInclusive);
+        }
+
+        @Override
+        public T first() {
+            Node<T> node = firstNode();
+            if (node == null) throw new NoSuchElementException();
+            return node.value;
+        }
+
+        @Override
+        public T last() {
+            Node<T> node = lastNode();
+            if (node == null) throw new NoSuchElementException();
+            return node.value;
+        }
+    }
+
+    private Node<T> mostLeft() {
+        return root == null ? null : mostLeftChild(root);
+    }
+
+    private Node<T> mostRight() {
         Node<T> currentNode = root;
-        while (currentNode.right != null) {
+        while (currentNode != null && currentNode.right != null) {
             currentNode = currentNode.right;
         }
-        return currentNode.value;
+        return currentNode;
+    }
+
+    // the node of first(), or null when empty
+    Node<T> firstNode() {
+        return mostLeft();
+    }
+
+    // the node of last(), or null when empty
+    Node<T> lastNode() {
+        return mostRight();
+    }
+
+    @Override
+    public T first() {
+        if (root == null) throw new NoSuchElementException();
+        return mostLeft().value;
+    }
+
+    @Override
+    public T last() {
+        if (root == null) throw new NoSuchElementException();
+        return mostRight().value;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,544 @@
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+public class AVLTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+    /*
+        the keys live in an AVLTree whose nodes carry the mapped value as well, so an entry costs one
+        node and every lookup descends by the key itself. Range views share the tree through
+        AVLTree's range views, and a descending view swaps the direction of every navigation method
+     */
+    private final AVLTree<K> keys; // a MapTree, or the range view of one that this map covers
+    private final boolean descending;
+
+    // a tree node that is also the map entry for its key, held in value
+    static final class MapNode<K, V> extends AVLTree.Node<K> implements Entry<K, V> {
+        V mapped;
+
+        MapNode(K key) {
+            super(key);
+        }
+
+        @Override
+        public K getKey() {
+            return value;
+        }
+
+        @Override
+        public V getValue() {
+            return mapped;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = mapped;
+            mapped = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return Objects.equals(value, entry.getKey()) && Objects.equals(mapped, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(value) ^ Objects.hashCode(mapped);
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + mapped;
+        }
+    }
+
+    private static final class MapTree<K, V> extends AVLTree<K> {
+        MapTree(Comparator<? super K> comparator) {
+            super(comparator);
+        }
+
+        @Override
+        Node<K> newNode(K key) {
+            return new MapNode<K, V>(key);
+        }
+
+        @Override
+        AVLTree<K> newTree() {
+            return new MapTree<K, V>(comparator());
+        }
+    }
+
+    public AVLTreeMap() {
+        this((Comparator<? super K>) null);
+    }
+
+    // orders the keys with comparator, or by their natural ordering when it is null
+    public AVLTreeMap(Comparator<? super K> comparator) {
+        this(new MapTree<K, V>(comparator), false);
+    }
+
+    private AVLTreeMap(AVLTree<K> keys, boolean descending) {
+        this.keys = keys;
+        this.descending = descending;
+    }
+
+    // as in TreeMap, null keys are up to the comparator; natural ordering never accepts them
+    @SuppressWarnings("unchecked")
+    private K checkKey(Object key) {
+        if (key == null && keys.comparator() == null) throw new NullPointerException();
+        return (K) key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> MapNode<K, V> entry(AVLTree.Node<K> node) {
+        return (MapNode<K, V>) node;
+    }
+
+    private static <K, V> Entry<K, V> exported(MapNode<K, V> entry) {
+        return entry == null ? null : new SimpleImmutableEntry<>(entry);
+    }
+
+    private static <K> K keyOrNull(Entry<K, ?> entry) {
+        return entry == null ? null : entry.getKey();
+    }
+
+    private static <K> K key(Entry<K, ?> entry) {
+        if (entry == null) throw new NoSuchElementException();
+        return entry.getKey();
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keys.getNode(checkKey(key)) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        MapNode<K, V> entry = entry(keys.getNode(checkKey(key)));
+        return entry == null ? null : entry.mapped;
+    }
+
+    // a node added for an absent key maps to null, so put and putIfAbsent need no second descent
+
+    @Override
+    public V put(K key, V value) {
+        MapNode<K, V> entry = entry(keys.addOrGetNode(checkKey(key)));
+        return entry.setValue(value);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        MapNode<K, V> entry = entry(keys.addOrGetNode(checkKey(key)));
+        return entry.mapped == null ? entry.setValue(value) : entry.mapped;
+    }
+
+    @Override
+    public V remove(Object key) {
+        MapNode<K, V> entry = entry(keys.removeNode(checkKey(key)));
+        return entry == null ? null : entry.mapped;
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+    }
+
+    /*
+        the compute and merge family descends once: the seek finds the entry or the slot it would
+        take, the function runs, and the entry is then updated, inserted at that slot or unlinked
+        from it. The functions never see a half-inserted entry, and one that changes this map
+        along that path makes the insert or unlink throw ConcurrentModificationException
+     */
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null) throw new NullPointerException();
+        MapNode<K, V> entry = entry(keys.seek(checkKey(key)));
+        if (entry != null && entry.mapped != null) return entry.mapped;
+        V value = mappingFunction.apply(key);
+        if (value == null) return null;
+        if (entry == null) entry = entry(keys.insertAtSeek(key));
+        entry.mapped = value;
+        return value;
+    }
+
+    @Override
+    public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null) throw new NullPointerException();
+        MapNode<K, V> entry = entry(keys.seek(checkKey(key)));
+        if (entry == null || entry.mapped == null) return null;
+        V value = remappingFunction.apply(key, entry.mapped);
+        if (value == null) keys.removeAtSeek(entry);
+        else entry.mapped = value;
+        return value;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null) throw new NullPointerException();
+        MapNode<K, V> entry = entry(keys.seek(checkKey(key)));
+        V value = remappingFunction.apply(key, entry == null ? null : entry.mapped);
+        if (value == null) {
+            if (entry != null) keys.removeAtSeek(entry);
+        } else {
+            if (entry == null) entry = entry(keys.insertAtSeek(key));
+            entry.mapped = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null) throw new NullPointerException();
+        MapNode<K, V> entry = entry(keys.seek(checkKey(key)));
+        if (entry == null) entry = entry(keys.insertAtSeek(key));
+        V merged = entry.mapped == null ? value : remappingFunction.apply(entry.mapped, value);
+        if (merged == null) keys.removeAtSeek(entry);
+        else entry.mapped = merged;
+        return merged;
+    }
+
+    private MapNode<K, V> lowest() {
+        return entry(descending ? keys.lastNode() : keys.firstNode());
+    }
+
+    private MapNode<K, V> highest() {
+        return entry(descending ? keys.firstNode() : keys.lastNode());
+    }
+
+    // the entry before key in this map's order
+    private MapNode<K, V> below(K key, boolean inclusive) {
+        checkKey(key);
+        return entry(descending ? keys.higherNode(key, inclusive) : keys.lowerNode(key, inclusive));
+    }
+
+    // the entry after key in this map's order
+    private MapNode<K, V> above(K key, boolean inclusive) {
+        checkKey(key);
+        return entry(descending ? keys.lowerNode(key, inclusive) : keys.higherNode(key, inclusive));
+    }
+
+    private Entry<K, V> poll(MapNode<K, V> entry) {
+        if (entry != null) keys.removeNode(entry.value);
+        return exported(entry);
+    }
+
+    @Override
+    public Entry<K, V> lowerEntry(K key) {
+        return exported(below(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(below(key, false));
+    }
+
+    @Override
+    public Entry<K, V> floorEntry(K key) {
+        return exported(below(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(below(key, true));
+    }
+
+    @Override
+    public Entry<K, V> ceilingEntry(K key) {
+        return exported(above(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(above(key, true));
+    }
+
+    @Override
+    public Entry<K, V> higherEntry(K key) {
+        return exported(above(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(above(key, false));
+    }
+
+    @Override
+    public Entry<K, V> firstEntry() {
+        return exported(lowest());
+    }
+
+    @Override
+    public Entry<K, V> lastEntry() {
+        return exported(highest());
+    }
+
+    @Override
+    public Entry<K, V> pollFirstEntry() {
+        return poll(lowest());
+    }
+
+    @Override
+    public Entry<K, V> pollLastEntry() {
+        return poll(highest());
+    }
+
+    @Override
+    public K firstKey() {
+        return key(lowest());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(highest());
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        if (!descending) return keys.comparator();
+        return Collections.reverseOrder(keys.comparator());
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return new AVLTreeMap<>(keys, !descending);
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        checkKey(fromKey);
+        checkKey(toKey);
+        if (descending) return new AVLTreeMap<>(keys.subSet(toKey, toInclusive, fromKey, fromInclusive), true);
+        return new AVLTreeMap<>(keys.subSet(fromKey, fromInclusive, toKey, toInclusive), false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        checkKey(toKey);
+        if (descending) return new AVLTreeMap<>(keys.tailSet(toKey, inclusive), true);
+        return new AVLTreeMap<>(keys.headSet(toKey, inclusive), false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        checkKey(fromKey);
+        if (descending) return new AVLTreeMap<>(keys.headSet(fromKey, inclusive), true);
+        return new AVLTreeMap<>(keys.tailSet(fromKey, inclusive), false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new EntrySet();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        return new KeySet();
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    // entries handed out by the iterator are the tree's own nodes, so setValue writes through
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private final AVLTree<K>.BinarySearchTreeIterator iterator = descending ? keys.descendingIterator() : keys.iterator();
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            return entry(iterator.nextNode());
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+
+    private class EntrySet extends AbstractSet<Entry<K, V>> {
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return AVLTreeMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Entry)) return false;
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            MapNode<K, V> stored = entry(keys.getNode(checkKey(entry.getKey())));
+            return stored != null && Objects.equals(stored.mapped, entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!contains(o)) return false;
+            keys.removeNode(((Entry<?, ?>) o).getKey());
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            keys.clear();
+        }
+    }
+
+    private class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return descending ? keys.descendingIterator() : keys.iterator();
+        }
+
+        @Override
+        public Iterator<K> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return AVLTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return AVLTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return keys.removeNode(checkKey(o)) != null;
+        }
+
+        @Override
+        public void clear() {
+            keys.clear();
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return AVLTreeMap.this.comparator();
+        }
+
+        @Override
+        public K first() {
+            return firstKey();
+        }
+
+        @Override
+        public K last() {
+            return lastKey();
+        }
+
+        @Override
+        public K lower(K k) {
+            return lowerKey(k);
+        }
+
+        @Override
+        public K floor(K k) {
+            return floorKey(k);
+        }
+
+        @Override
+        public K ceiling(K k) {
+            return ceilingKey(k);
+        }
+
+        @Override
+        public K higher(K k) {
+            return higherKey(k);
+        }
+
+        @Override
+        public K pollFirst() {
+            return keyOrNull(pollFirstEntry());
+        }
+
+        @Override
+        public K pollLast() {
+            return keyOrNull(pollLastEntry());
+        }
+
+        @Override
+        public NavigableSet<K> descendingSet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+            return subMap(fromElement, fromInclusive, toElement, toInclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+            return headMap(toElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+            return tailMap(fromElement, inclusive).navigableKeySet();
+        }
+
+        @Override
+        public SortedSet<K> subSet(K fromElement, K toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> headSet(K toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<K> tailSet(K fromElement) {
+            return tailSet(fromElement, true);
+        }
+    }
+}
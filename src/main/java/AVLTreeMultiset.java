@@ -0,0 +1,159 @@
+import java.util.*;
+
+public class AVLTreeMultiset<T> extends AbstractCollection<T> {
+    /*
+        every distinct value is stored once, on a tree node that carries the number of its
+        occurrences as an int, so memory follows the number of distinct values however many
+        duplicates are added, and changing a count allocates nothing. The iterator repeats each
+        value count times without expanding anything up front
+     */
+    private final AVLTree<T> counts;
+    private long size = 0;
+
+    private static final class CountNode<T> extends AVLTree.Node<T> {
+        int count;
+
+        CountNode(T value) {
+            super(value);
+        }
+    }
+
+    private static final class CountTree<T> extends AVLTree<T> {
+        CountTree(Comparator<? super T> comparator) {
+            super(comparator);
+        }
+
+        @Override
+        Node<T> newNode(T value) {
+            return new CountNode<>(value);
+        }
+
+        @Override
+        AVLTree<T> newTree() {
+            return new CountTree<>(comparator());
+        }
+    }
+
+    public AVLTreeMultiset() {
+        this(null);
+    }
+
+    // orders the values with comparator, or by their natural ordering when it is null
+    public AVLTreeMultiset(Comparator<? super T> comparator) {
+        counts = new CountTree<>(comparator);
+    }
+
+    private static <T> CountNode<T> countNode(AVLTree.Node<T> node) {
+        return (CountNode<T>) node;
+    }
+
+    // the number of occurrences, saturated at Integer.MAX_VALUE
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int count(Object value) {
+        CountNode<T> node = countNode(counts.getNode(value));
+        return node == null ? 0 : node.count;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return counts.getNode(o) != null;
+    }
+
+    @Override
+    public boolean add(T value) {
+        add(value, 1);
+        return true;
+    }
+
+    // adds occurrences of value and returns the count before
+    public int add(T value, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("occurrences < 0: " + occurrences);
+        if (occurrences == 0) return count(value);
+        // a node added for an absent value starts from a count of 0
+        CountNode<T> node = countNode(counts.addOrGetNode(value));
+        int count = node.count;
+        node.count = Math.addExact(count, occurrences);
+        size += occurrences;
+        return count;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return remove(o, 1) > 0;
+    }
+
+    // removes up to occurrences of value and returns the count before
+    public int remove(Object value, int occurrences) {
+        if (occurrences < 0) throw new IllegalArgumentException("occurrences < 0: " + occurrences);
+        // one descent: the seek finds the node, which is then decremented or unlinked in place
+        CountNode<T> node = countNode(counts.seek(value));
+        if (node == null) return 0;
+        int count = node.count;
+        if (count <= occurrences) {
+            counts.removeAtSeek(node);
+            size -= count;
+        } else {
+            node.count = count - occurrences;
+            size -= occurrences;
+        }
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        counts.clear();
+        size = 0;
+    }
+
+    // the distinct values, in order, as a read-only view
+    public NavigableSet<T> elementSet() {
+        return Collections.unmodifiableNavigableSet(counts);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ExpandingIterator();
+    }
+
+    private class ExpandingIterator implements Iterator<T> {
+        private final AVLTree<T>.BinarySearchTreeIterator nodes = counts.iterator();
+        private CountNode<T> node;
+        private int remaining;
+        private boolean canRemove;
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0 || nodes.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (remaining == 0) {
+                node = countNode(nodes.nextNode());
+                remaining = node.count;
+            }
+            remaining--;
+            canRemove = true;
+            return node.value;
+        }
+
+        // drops the occurrence just returned; the node itself goes with its last occurrence
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            if (node.count == 1) nodes.remove();
+            else node.count--;
+            size--;
+            canRemove = false;
+        }
+    }
+}
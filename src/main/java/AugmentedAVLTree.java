@@ -0,0 +1,104 @@
+import java.util.Comparator;
+
+public class AugmentedAVLTree<T, A> extends AVLTree<T> {
+    /*
+        every node also caches the monoid fold of its subtree. AVLTree calls update() on each node
+        whose children change, rotations, joins and bulk builds included, so keeping the cache
+        costs one combine per relink and a range fold only visits the two boundary paths
+     */
+    private final Monoid<? super T, A> monoid;
+
+    static class AugmentedNode<T, A> extends Node<T> {
+        A aggregate;
+
+        AugmentedNode(T value) {
+            super(value);
+        }
+    }
+
+    public AugmentedAVLTree(Monoid<? super T, A> monoid) {
+        this(null, monoid);
+    }
+
+    public AugmentedAVLTree(Comparator<? super T> comparator, Monoid<? super T, A> monoid) {
+        super(comparator);
+        if (monoid == null) throw new NullPointerException();
+        this.monoid = monoid;
+    }
+
+    @Override
+    Node<T> newNode(T value) {
+        AugmentedNode<T, A> node = new AugmentedNode<>(value);
+        node.aggregate = monoid.of(value);
+        return node;
+    }
+
+    @Override
+    AugmentedAVLTree<T, A> newTree() {
+        return new AugmentedAVLTree<>(comparator(), monoid);
+    }
+
+    @Override
+    void update(Node<T> node) {
+        super.update(node);
+        updateAggregate(node);
+    }
+
+    /*
+        the cached fold goes through updateAggregate and aggregate(Node) only, so a subclass with a
+        primitive aggregate can keep it in a node type of its own, created by newNode
+     */
+
+    @SuppressWarnings("unchecked")
+    void updateAggregate(Node<T> node) {
+        A aggregate = monoid.combine(aggregate(node.left), monoid.of(node.value));
+        ((AugmentedNode<T, A>) node).aggregate = monoid.combine(aggregate, aggregate(node.right));
+    }
+
+    @SuppressWarnings("unchecked")
+    A aggregate(Node<T> node) {
+        return node == null ? monoid.identity() : ((AugmentedNode<T, A>) node).aggregate;
+    }
+
+    // the tail comes from newTree(), so it is augmented with the same monoid
+    @Override
+    @SuppressWarnings("unchecked")
+    public AugmentedAVLTree<T, A> split(T key) {
+        return (AugmentedAVLTree<T, A>) super.split(key);
+    }
+
+    // the nodes of other must carry the same aggregates to be linked in
+    @Override
+    public void join(AVLTree<T> other) {
+        if (!(other instanceof AugmentedAVLTree) || ((AugmentedAVLTree<?, ?>) other).monoid != monoid) {
+            throw new IllegalArgumentException("joined tree must be augmented with the same monoid");
+        }
+        super.join(other);
+    }
+
+    // the fold of every value, in order
+    public A aggregate() {
+        return aggregate(root);
+    }
+
+    // the fold of the values in [from, to), in O(log n); a null bound leaves that side open
+    public A aggregate(T from, T to) {
+        return aggregate(root, from, to);
+    }
+
+    private A aggregate(Node<T> node, T from, T to) {
+        while (node != null) {
+            if (from == null && to == null) return aggregate(node);
+            if (from != null && compare(node.value, from) < 0) {
+                node = node.right;
+            } else if (to != null && compare(node.value, to) >= 0) {
+                node = node.left;
+            } else {
+                // node is in range: below it only from still bounds the left side, only to the right side
+                A left = monoid.combine(aggregate(node.left, from, null), monoid.of(node.value));
+                return monoid.combine(left, aggregate(node.right, null, to));
+            }
+        }
+        return monoid.identity();
+    }
+}
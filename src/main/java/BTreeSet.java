@@ -0,0 +1,728 @@
+import java.util.*;
+
+public class BTreeSet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    /*
+        a B+ tree: every value lives in a leaf, leaves are linked left to right for scans, and an
+        inner node's child i holds the values in [keys[i - 1], keys[i]). Nodes other than the root
+        keep between MIN_KEYS and MAX_KEYS sorted keys and are binary searched, so a lookup touches
+        about log32(n) nodes where AVLTree chases about 1.44 log2(n) pointers
+     */
+    static final int MAX_KEYS = 64;
+    static final int MIN_KEYS = 16;
+
+    private final Comparator<? super T> comparator;
+    private Node root = new Leaf();
+    private int size = 0;
+    private Object separator; // the key that the last split promoted to the parent
+
+    private static class Node {
+        final Object[] keys = new Object[MAX_KEYS + 1];
+        int count;
+    }
+
+    private static final class Leaf extends Node {
+        Leaf next;
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children = new Node[MAX_KEYS + 2];
+        final int[] sizes = new int[MAX_KEYS + 2];
+    }
+
+    public BTreeSet() {
+        this(null);
+    }
+
+    // orders the values with comparator, or by their natural ordering when it is null
+    public BTreeSet(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int compare(Object a, Object b) {
+        return AVLTree.compare(comparator, a, b);
+    }
+
+    // index of the first key of node that is >= key, or > key when not inclusive
+    private int search(Node node, Object key, boolean inclusive) {
+        int lo = 0;
+        int hi = node.count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int comparison = compare(node.keys[mid], key);
+            if (comparison < 0 || (comparison == 0 && !inclusive)) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private Leaf leafOf(Object value) {
+        Node node = root;
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[search(node, value, false)];
+        }
+        return (Leaf) node;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null && comparator == null) throw new NullPointerException();
+        Leaf leaf = leafOf(o);
+        int i = search(leaf, o, true);
+        return i < leaf.count && compare(leaf.keys[i], o) == 0;
+    }
+
+    private static int sizeOf(Node node) {
+        if (node instanceof Leaf) return node.count;
+        Inner inner = (Inner) node;
+        int size = 0;
+        for (int i = 0; i <= inner.count; i++) size += inner.sizes[i];
+        return size;
+    }
+
+    private static void insertKey(Node node, int i, Object key) {
+        System.arraycopy(node.keys, i, node.keys, i + 1, node.count - i);
+        node.keys[i] = key;
+        node.count++;
+    }
+
+    private static void removeKey(Node node, int i) {
+        System.arraycopy(node.keys, i + 1, node.keys, i, node.count - i - 1);
+        node.keys[--node.count] = null;
+    }
+
+    @Override
+    public boolean add(T value) {
+        if (value == null && comparator == null) throw new NullPointerException();
+        int oldSize = size;
+        Node sibling = add(root, value);
+        if (sibling != null) {
+            Inner newRoot = new Inner();
+            newRoot.keys[0] = separator;
+            newRoot.count = 1;
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            newRoot.sizes[0] = sizeOf(root);
+            newRoot.sizes[1] = sizeOf(sibling);
+            root = newRoot;
+        }
+        return size != oldSize;
+    }
+
+    // returns the new right sibling of node if the insertion made it split
+    private Node add(Node node, T value) {
+        if (node instanceof Leaf) {
+            int i = search(node, value, true);
+            if (i < node.count && compare(node.keys[i], value) == 0) return null;
+            insertKey(node, i, value);
+            size++;
+            return node.count > MAX_KEYS ? splitLeaf((Leaf) node) : null;
+        }
+        Inner inner = (Inner) node;
+        int i = search(inner, value, false);
+        int oldSize = size;
+        Node sibling = add(inner.children[i], value);
+        if (size == oldSize) return null;
+        inner.sizes[i]++;
+        if (sibling == null) return null;
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - i);
+        System.arraycopy(inner.sizes, i + 1, inner.sizes, i + 2, inner.count - i);
+        insertKey(inner, i, separator);
+        inner.children[i + 1] = sibling;
+        inner.sizes[i + 1] = sizeOf(sibling);
+        inner.sizes[i] -= inner.sizes[i + 1];
+        return inner.count > MAX_KEYS ? splitInner(inner) : null;
+    }
+
+    private Node splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf();
+        int half = leaf.count / 2;
+        right.count = leaf.count - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.count);
+        Arrays.fill(leaf.keys, half, leaf.count, null);
+        leaf.count = half;
+        right.next = leaf.next;
+        leaf.next = right;
+        separator = right.keys[0];
+        return right;
+    }
+
+    private Node splitInner(Inner inner) {
+        Inner right = new Inner();
+        int half = inner.count / 2;
+        right.count = inner.count - half - 1;
+        System.arraycopy(inner.keys, half + 1, right.keys, 0, right.count);
+        System.arraycopy(inner.children, half + 1, right.children, 0, right.count + 1);
+        System.arraycopy(inner.sizes, half + 1, right.sizes, 0, right.count + 1);
+        separator = inner.keys[half];
+        Arrays.fill(inner.keys, half, inner.count, null);
+        Arrays.fill(inner.children, half + 1, inner.count + 1, null);
+        inner.count = half;
+        return right;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null && comparator == null) throw new NullPointerException();
+        int oldSize = size;
+        remove(root, o);
+        if (root instanceof Inner && root.count == 0) root = ((Inner) root).children[0];
+        return size != oldSize;
+    }
+
+    private void remove(Node node, Object value) {
+        if (node instanceof Leaf) {
+            int i = search(node, value, true);
+            if (i < node.count && compare(node.keys[i], value) == 0) {
+                removeKey(node, i);
+                size--;
+            }
+            return;
+        }
+        Inner inner = (Inner) node;
+        int i = search(inner, value, false);
+        int oldSize = size;
+        remove(inner.children[i], value);
+        if (size == oldSize) return;
+        inner.sizes[i]--;
+        if (inner.children[i].count < MIN_KEYS) rebalance(inner, Math.max(0, i - 1));
+    }
+
+    // refills the underflowing one of the children l and l + 1 from the other, or merges them
+    private void rebalance(Inner parent, int l) {
+        Node left = parent.children[l];
+        Node right = parent.children[l + 1];
+        int merged = left.count + right.count + (left instanceof Leaf ? 0 : 1);
+        if (merged <= MAX_KEYS) {
+            merge(parent, l);
+        } else if (left.count < right.count) {
+            moveLeft(parent, l);
+        } else {
+            moveRight(parent, l);
+        }
+    }
+
+    private void merge(Inner parent, int l) {
+        Node left = parent.children[l];
+        Node right = parent.children[l + 1];
+        if (left instanceof Leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            left.count += right.count;
+            ((Leaf) left).next = ((Leaf) right).next;
+        } else {
+            Inner a = (Inner) left;
+            Inner b = (Inner) right;
+            a.keys[a.count] = parent.keys[l];
+            System.arraycopy(b.keys, 0, a.keys, a.count + 1, b.count);
+            System.arraycopy(b.children, 0, a.children, a.count + 1, b.count + 1);
+            System.arraycopy(b.sizes, 0, a.sizes, a.count + 1, b.count + 1);
+            a.count += b.count + 1;
+        }
+        parent.sizes[l] += parent.sizes[l + 1];
+        System.arraycopy(parent.children, l + 2, parent.children, l + 1, parent.count - l - 1);
+        System.arraycopy(parent.sizes, l + 2, parent.sizes, l + 1, parent.count - l - 1);
+        parent.children[parent.count] = null;
+        removeKey(parent, l);
+    }
+
+    // moves the first entry of child l + 1 to the end of child l
+    private void moveLeft(Inner parent, int l) {
+        Node left = parent.children[l];
+        Node right = parent.children[l + 1];
+        int moved = 1;
+        if (left instanceof Leaf) {
+            left.keys[left.count++] = right.keys[0];
+            removeKey(right, 0);
+            parent.keys[l] = right.keys[0];
+        } else {
+            Inner a = (Inner) left;
+            Inner b = (Inner) right;
+            moved = b.sizes[0];
+            a.children[a.count + 1] = b.children[0];
+            a.sizes[a.count + 1] = moved;
+            insertKey(a, a.count, parent.keys[l]);
+            parent.keys[l] = b.keys[0];
+            System.arraycopy(b.children, 1, b.children, 0, b.count);
+            System.arraycopy(b.sizes, 1, b.sizes, 0, b.count);
+            b.children[b.count] = null;
+            removeKey(b, 0);
+        }
+        parent.sizes[l] += moved;
+        parent.sizes[l + 1] -= moved;
+    }
+
+    // moves the last entry of child l to the front of child l + 1
+    private void moveRight(Inner parent, int l) {
+        Node left = parent.children[l];
+        Node right = parent.children[l + 1];
+        int moved = 1;
+        if (left instanceof Leaf) {
+            insertKey(right, 0, left.keys[left.count - 1]);
+            removeKey(left, left.count - 1);
+            parent.keys[l] = right.keys[0];
+        } else {
+            Inner a = (Inner) left;
+            Inner b = (Inner) right;
+            moved = a.sizes[a.count];
+            System.arraycopy(b.children, 0, b.children, 1, b.count + 1);
+            System.arraycopy(b.sizes, 0, b.sizes, 1, b.count + 1);
+            b.children[0] = a.children[a.count];
+            b.sizes[0] = moved;
+            insertKey(b, 0, parent.keys[l]);
+            parent.keys[l] = a.keys[a.count - 1];
+            a.children[a.count] = null;
+            removeKey(a, a.count - 1);
+        }
+        parent.sizes[l] -= moved;
+        parent.sizes[l + 1] += moved;
+    }
+
+    @Override
+    public void clear() {
+        root = new Leaf();
+        size = 0;
+    }
+
+    // the number of values less than value
+    public int rank(T value) {
+        return rank(value, false);
+    }
+
+    // the number of values less than value, or not greater than it when inclusive
+    private int rank(Object value, boolean inclusive) {
+        int rank = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = search(inner, value, false);
+            for (int j = 0; j < i; j++) rank += inner.sizes[j];
+            node = inner.children[i];
+        }
+        return rank + search(node, value, !inclusive);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T select(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = 0;
+            while (index >= inner.sizes[i]) index -= inner.sizes[i++];
+            node = inner.children[i];
+        }
+        return (T) node.keys[index];
+    }
+
+    public T get(int index) {
+        return select(index);
+    }
+
+    /*
+        navigation is rank arithmetic over the ranks [lo, hi) that a set or view covers: the
+        neighbours of a value sit one rank either side of where it would be inserted
+     */
+
+    // the greatest value in [lo, hi) below value, or not greater than it when inclusive
+    private T below(T value, boolean inclusive, int lo, int hi) {
+        if (value == null && comparator == null) throw new NullPointerException();
+        int index = Math.min(rank(value, inclusive), hi) - 1;
+        return index >= lo ? select(index) : null;
+    }
+
+    // the least value in [lo, hi) above value, or not less than it when inclusive
+    private T above(T value, boolean inclusive, int lo, int hi) {
+        if (value == null && comparator == null) throw new NullPointerException();
+        int index = Math.max(rank(value, !inclusive), lo);
+        return index < hi ? select(index) : null;
+    }
+
+    private T poll(int index, int lo, int hi) {
+        if (index < lo || index >= hi) return null;
+        T value = select(index);
+        remove(value);
+        return value;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public T first() {
+        if (size == 0) throw new NoSuchElementException();
+        return select(0);
+    }
+
+    @Override
+    public T last() {
+        if (size == 0) throw new NoSuchElementException();
+        return select(size - 1);
+    }
+
+    @Override
+    public T lower(T value) {
+        return below(value, false, 0, size);
+    }
+
+    @Override
+    public T floor(T value) {
+        return below(value, true, 0, size);
+    }
+
+    @Override
+    public T ceiling(T value) {
+        return above(value, true, 0, size);
+    }
+
+    @Override
+    public T higher(T value) {
+        return above(value, false, 0, size);
+    }
+
+    @Override
+    public T pollFirst() {
+        return poll(0, 0, size);
+    }
+
+    @Override
+    public T pollLast() {
+        return poll(size - 1, 0, size);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new LeafIterator(true, null, false, true, null, false);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return new DescendingIterator(0, size);
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return new DescendingAVLTree<>(this);
+    }
+
+    // walks the linked leaves, so a scan touches every leaf once and never climbs the tree
+    public class LeafIterator implements Iterator<T> {
+        private final boolean toEnd;
+        private final T top;
+        private final boolean topInclusive;
+        private Leaf leaf;
+        private int index;
+        private T lastReturned;
+        private boolean canRemove;
+
+        // fromStart and toEnd leave a side open
+        private LeafIterator(boolean fromStart, T bottom, boolean bottomInclusive, boolean toEnd, T top, boolean topInclusive) {
+            this.toEnd = toEnd;
+            this.top = top;
+            this.topInclusive = topInclusive;
+            if (fromStart) {
+                Node node = root;
+                while (node instanceof Inner) node = ((Inner) node).children[0];
+                leaf = (Leaf) node;
+            } else {
+                seek(bottom, bottomInclusive);
+            }
+        }
+
+        private void seek(T value, boolean inclusive) {
+            leaf = leafOf(value);
+            index = search(leaf, value, inclusive);
+            if (index == leaf.count && leaf.next != null) {
+                leaf = leaf.next;
+                index = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index == leaf.count) return false;
+            if (toEnd) return true;
+            int comparison = compare(leaf.keys[index], top);
+            return comparison < 0 || (comparison == 0 && topInclusive);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            lastReturned = (T) leaf.keys[index++];
+            canRemove = true;
+            if (index == leaf.count && leaf.next != null) {
+                leaf = leaf.next;
+                index = 0;
+            }
+            return lastReturned;
+        }
+
+        // removal may merge or refill leaves, so the iterator finds its place again from the root
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            BTreeSet.this.remove(lastReturned);
+            seek(lastReturned, false);
+            canRemove = false;
+        }
+    }
+
+    // leaves are only linked forwards, so a descending walk selects each value by rank
+    private class DescendingIterator implements Iterator<T> {
+        private final int lo;
+        private int index;
+        private T lastReturned;
+        private boolean canRemove;
+
+        private DescendingIterator(int lo, int hi) {
+            this.lo = lo;
+            this.index = hi - 1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index >= lo;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            lastReturned = select(index--);
+            canRemove = true;
+            return lastReturned;
+        }
+
+        // only greater ranks shift, so the next value keeps its rank
+        @Override
+        public void remove() {
+            if (!canRemove) throw new IllegalStateException();
+            BTreeSet.this.remove(lastReturned);
+            canRemove = false;
+        }
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+        return new SubBTreeSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        if (toElement == null && comparator == null) throw new NullPointerException();
+        return new SubBTreeSet(true, null, false, false, toElement, inclusive);
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        if (fromElement == null && comparator == null) throw new NullPointerException();
+        return new SubBTreeSet(false, fromElement, inclusive, true, null, false);
+    }
+
+    // fromStart and toEnd mark an open side, as null may be a value under a comparator
+    private class SubBTreeSet extends AbstractSet<T> implements NavigableSet<T> {
+        final boolean fromStart;
+        final T bottom;
+        final boolean bottomInclusive;
+        final boolean toEnd;
+        final T top;
+        final boolean topInclusive;
+
+        private SubBTreeSet(boolean fromStart, T bottom, boolean bottomInclusive,
+                            boolean toEnd, T top, boolean topInclusive) {
+            this.fromStart = fromStart;
+            this.toEnd = toEnd;
+            this.bottom = bottom;
+            this.bottomInclusive = bottomInclusive;
+            this.top = top;
+            this.topInclusive = topInclusive;
+        }
+
+        private boolean tooLow(T value) {
+            if (fromStart) return false;
+            int comparison = compare(value, bottom);
+            return comparison < 0 || (comparison == 0 && !bottomInclusive);
+        }
+
+        private boolean tooHigh(T value) {
+            if (toEnd) return false;
+            int comparison = compare(value, top);
+            return comparison > 0 || (comparison == 0 && !topInclusive);
+        }
+
+        private boolean check(T value) {
+            return !tooLow(value) && !tooHigh(value);
+        }
+
+        private boolean checkBound(T value, boolean inclusive) {
+            if (inclusive) return check(value);
+            return (fromStart || compare(value, bottom) >= 0) && (toEnd || compare(value, top) <= 0);
+        }
+
+        private int lowRank() {
+            return fromStart ? 0 : rank(bottom, !bottomInclusive);
+        }
+
+        private int highRank() {
+            return toEnd ? size : rank(top, topInclusive);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, highRank() - lowRank());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && BTreeSet.this.contains(t);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return BTreeSet.this.add(value);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            if (!check(t)) throw new IllegalArgumentException();
+            return BTreeSet.this.remove(t);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new LeafIterator(fromStart, bottom, bottomInclusive, toEnd, top, topInclusive);
+        }
+
+        @Override
+        public Iterator<T> descendingIterator() {
+            return new DescendingIterator(lowRank(), highRank());
+        }
+
+        @Override
+        public NavigableSet<T> descendingSet() {
+            return new DescendingAVLTree<>(this);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+        @Override
+        public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+            if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+            if (!checkBound(fromElement, fromInclusive) || !checkBound(toElement, toInclusive))
+                throw new IllegalArgumentException();
+            return new SubBTreeSet(false, fromElement, fromInclusive, false, toElement, toInclusive);
+        }
+
+        @Override
+        public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+            if (!checkBound(toElement, inclusive)) throw new IllegalArgumentException();
+            return new SubBTreeSet(fromStart, bottom, bottomInclusive, false, toElement, inclusive);
+        }
+
+        @Override
+        public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+            if (!checkBound(fromElement, inclusive)) throw new IllegalArgumentException();
+            return new SubBTreeSet(false, fromElement, inclusive, toEnd, top, topInclusive);
+        }
+
+        @Override
+        public T first() {
+            int low = lowRank();
+            if (low >= highRank()) throw new NoSuchElementException();
+            return select(low);
+        }
+
+        @Override
+        public T last() {
+            int high = highRank();
+            if (lowRank() >= high) throw new NoSuchElementException();
+            return select(high - 1);
+        }
+
+        @Override
+        public T lower(T value) {
+            return below(value, false, lowRank(), highRank());
+        }
+
+        @Override
+        public T floor(T value) {
+            return below(value, true, lowRank(), highRank());
+        }
+
+        @Override
+        public T ceiling(T value) {
+            return above(value, true, lowRank(), highRank());
+        }
+
+        @Override
+        public T higher(T value) {
+            return above(value, false, lowRank(), highRank());
+        }
+
+        @Override
+        public T pollFirst() {
+            return poll(lowRank(), lowRank(), highRank());
+        }
+
+        @Override
+        public T pollLast() {
+            int high = highRank();
+            return poll(high - 1, lowRank(), high);
+        }
+    }
+}
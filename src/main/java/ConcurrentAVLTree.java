@@ -0,0 +1,263 @@
+import java.util.*;
+
+public class ConcurrentAVLTree<T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
+    /*
+        nodes are immutable: a writer copies the O(log n) nodes on its search path and publishes
+        the new root with one volatile write, so a reader descends whatever root it read last
+        without a lock, a retry or a stamp to validate, even while a writer is halfway through.
+        Writers are serialized with each other only. The nodes and the path-copying add and remove
+        are PersistentAVLTree's
+     */
+    private static final int EXACT = 0;
+    private static final int CEILING = 1;
+    private static final int HIGHER = 2;
+    private static final int LOWER = 3;
+    private static final int FIRST = 4;
+    private static final int LAST = 5;
+
+    private volatile PersistentAVLTree.Node<T> root;
+
+    @Override
+    public int size() {
+        return PersistentAVLTree.getSize(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        if (t == null) throw new NullPointerException();
+        return read(EXACT, t) != null;
+    }
+
+    @Override
+    public T first() {
+        T value = read(FIRST, null);
+        if (value == null) throw new NoSuchElementException();
+        return value;
+    }
+
+    @Override
+    public T last() {
+        T value = read(LAST, null);
+        if (value == null) throw new NoSuchElementException();
+        return value;
+    }
+
+    private T read(int mode, T value) {
+        PersistentAVLTree.Node<T> result = null;
+        PersistentAVLTree.Node<T> node = root;
+        while (node != null) {
+            T current = node.value;
+            int comparison = mode == FIRST ? -1 : mode == LAST ? 1 : value.compareTo(current);
+            if (mode == EXACT) {
+                if (comparison == 0) return current;
+                node = comparison < 0 ? node.left : node.right;
+            } else if (mode == LOWER || mode == LAST) {
+                if (comparison > 0) {
+                    result = node;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            } else {
+                if (comparison == 0 && mode == CEILING) return current;
+                if (comparison < 0) {
+                    result = node;
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+        return result == null ? null : result.value;
+    }
+
+    @Override
+    public synchronized boolean add(T value) {
+        if (value == null) throw new NullPointerException();
+        PersistentAVLTree.Node<T> oldRoot = root;
+        root = PersistentAVLTree.add(oldRoot, value);
+        return root != oldRoot;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        if (t == null) throw new NullPointerException();
+        PersistentAVLTree.Node<T> oldRoot = root;
+        root = PersistentAVLTree.remove(oldRoot, t);
+        return root != oldRoot;
+    }
+
+    @Override
+    public synchronized void clear() {
+        root = null;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return null;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new WeaklyConsistentIterator(read(FIRST, null), null);
+    }
+
+    // every step is a fresh O(log n) lookup of the successor, so writers never invalidate it
+    private class WeaklyConsistentIterator implements Iterator<T> {
+        private final T top;
+        private T next;
+        private T lastReturned;
+
+        private WeaklyConsistentIterator(T first, T top) {
+            this.top = top;
+            this.next = bounded(first);
+        }
+
+        private T bounded(T value) {
+            return value != null && (top == null || value.compareTo(top) < 0) ? value : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) throw new NoSuchElementException();
+            lastReturned = next;
+            next = bounded(read(HIGHER, lastReturned));
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) throw new IllegalStateException();
+            ConcurrentAVLTree.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        if (fromElement.compareTo(toElement) > 0) throw new IllegalArgumentException();
+        return new SubConcurrentAVLTree(fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        if (toElement == null) throw new NullPointerException();
+        return new SubConcurrentAVLTree(null, toElement);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        if (fromElement == null) throw new NullPointerException();
+        return new SubConcurrentAVLTree(fromElement, null);
+    }
+
+    private class SubConcurrentAVLTree extends AbstractSet<T> implements SortedSet<T> {
+        final T bottom;
+        final T top;
+
+        private SubConcurrentAVLTree(T bottom, T top) {
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        private boolean check(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) < 0);
+        }
+
+        private boolean inClosedRange(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) <= 0);
+        }
+
+        // counts by rank in the one root it reads, so the size is exact for that version
+        @Override
+        public int size() {
+            PersistentAVLTree.Node<T> node = root;
+            int high = top == null ? PersistentAVLTree.getSize(node) : PersistentAVLTree.rank(node, top);
+            int low = bottom == null ? 0 : PersistentAVLTree.rank(node, bottom);
+            return Math.max(0, high - low);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && ConcurrentAVLTree.this.contains(t);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return ConcurrentAVLTree.this.add(value);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            if (!check(t)) throw new IllegalArgumentException();
+            return ConcurrentAVLTree.this.remove(t);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new WeaklyConsistentIterator(bottom == null ? read(FIRST, null) : read(CEILING, bottom), top);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            if (fromElement.compareTo(toElement) > 0 || !inClosedRange(fromElement) || !inClosedRange(toElement))
+                throw new IllegalArgumentException();
+            return new SubConcurrentAVLTree(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            if (!inClosedRange(toElement)) throw new IllegalArgumentException();
+            return new SubConcurrentAVLTree(bottom, toElement);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            if (!inClosedRange(fromElement)) throw new IllegalArgumentException();
+            return new SubConcurrentAVLTree(fromElement, top);
+        }
+
+        @Override
+        public T first() {
+            Iterator<T> iterator = iterator();
+            if (!iterator.hasNext()) throw new NoSuchElementException();
+            return iterator.next();
+        }
+
+        @Override
+        public T last() {
+            T value = top == null ? read(LAST, null) : read(LOWER, top);
+            if (value == null || !check(value)) throw new NoSuchElementException();
+            return value;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.*;
+
+class DescendingAVLTree<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private final NavigableSet<T> set;
+
+    DescendingAVLTree(NavigableSet<T> set) {
+        this.set = set;
+    }
+
+    @Override
+    public int size() {
+        return set.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return set.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return set.contains(o);
+    }
+
+    @Override
+    public boolean add(T value) {
+        return set.add(value);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return set.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        set.clear();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return set.descendingIterator();
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return set.iterator();
+    }
+
+    @Override
+    public NavigableSet<T> descendingSet() {
+        return set;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return Collections.reverseOrder(set.comparator());
+    }
+
+    @Override
+    public T first() {
+        return set.last();
+    }
+
+    @Override
+    public T last() {
+        return set.first();
+    }
+
+    @Override
+    public T lower(T value) {
+        return set.higher(value);
+    }
+
+    @Override
+    public T floor(T value) {
+        return set.ceiling(value);
+    }
+
+    @Override
+    public T ceiling(T value) {
+        return set.floor(value);
+    }
+
+    @Override
+    public T higher(T value) {
+        return set.lower(value);
+    }
+
+    @Override
+    public T pollFirst() {
+        return set.pollLast();
+    }
+
+    @Override
+    public T pollLast() {
+        return set.pollFirst();
+    }
+
+    @Override
+    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return new DescendingAVLTree<>(set.subSet(toElement, toInclusive, fromElement, fromInclusive));
+    }
+
+    @Override
+    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return new DescendingAVLTree<>(set.tailSet(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return new DescendingAVLTree<>(set.headSet(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.*;
+
+public class FrozenAVLTree<T> extends AbstractSet<T> implements SortedSet<T> {
+    /*
+        an immutable set stored in Eytzinger order: the implicit tree rooted at slot 1 has the
+        children of slot k at 2k and 2k + 1, so a search reads one contiguous array, the top levels
+        share a few cache lines and the loop below compiles without a data-dependent branch.
+        ranks[k] is the in-order position of slot k, which gives views their size in O(log n)
+     */
+    private final Comparator<? super T> comparator;
+    private final Object[] keys;
+    private final int[] ranks;
+    private final int size;
+
+    // builds the set in O(n) from the size values of iterator, ascending under comparator
+    FrozenAVLTree(Iterator<? extends T> iterator, int size, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.size = size;
+        keys = new Object[size + 1];
+        ranks = new int[size + 1];
+        fill(iterator, 1, 0);
+        if (iterator.hasNext()) throw new IllegalArgumentException("more than " + size + " values");
+    }
+
+    // places the subtree rooted at slot k in order, returning the rank after its last value
+    private int fill(Iterator<? extends T> iterator, int k, int rank) {
+        if (k > size) return rank;
+        rank = fill(iterator, 2 * k, rank);
+        if (!iterator.hasNext()) throw new IllegalArgumentException("fewer than " + size + " values");
+        keys[k] = iterator.next();
+        ranks[k] = rank++;
+        return fill(iterator, 2 * k + 1, rank);
+    }
+
+    private int compare(T a, T b) {
+        return AVLTree.compare(comparator, a, b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T key(int k) {
+        return (T) keys[k];
+    }
+
+    // slot of the first value >= value, or > value when not inclusive; 0 if there is none
+    private int search(T value, boolean inclusive) {
+        int k = 1;
+        while (k <= size) {
+            int comparison = compare(key(k), value);
+            k = 2 * k + (comparison < 0 || (comparison == 0 && !inclusive) ? 1 : 0);
+        }
+        // undo the trailing right turns and the last left turn
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    private int rankOf(int k) {
+        return k == 0 ? size : ranks[k];
+    }
+
+    private int leftmost(int k) {
+        while (2 * k <= size) k = 2 * k;
+        return k;
+    }
+
+    private int rightmost(int k) {
+        while (2 * k + 1 <= size) k = 2 * k + 1;
+        return k;
+    }
+
+    private int successor(int k) {
+        if (2 * k + 1 <= size) return leftmost(2 * k + 1);
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    private int predecessor(int k) {
+        if (2 * k <= size) return rightmost(2 * k);
+        return k >>> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        int k = search(t, true);
+        return k != 0 && compare(key(k), t) == 0;
+    }
+
+    // the number of values less than value
+    public int rank(T value) {
+        return rankOf(search(value, true));
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException("frozen set is immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("frozen set is immutable");
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public T first() {
+        if (size == 0) throw new NoSuchElementException();
+        return key(leftmost(1));
+    }
+
+    @Override
+    public T last() {
+        if (size == 0) throw new NoSuchElementException();
+        return key(rightmost(1));
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new EytzingerIterator(size == 0 ? 0 : leftmost(1), 0);
+    }
+
+    // steps from slot to in-order successor slot until it reaches the fence slot (0 for the end)
+    private class EytzingerIterator implements Iterator<T> {
+        private final int fence;
+        private int next;
+
+        private EytzingerIterator(int first, int fence) {
+            this.next = first;
+            this.fence = fence;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != fence;
+        }
+
+        @Override
+        public T next() {
+            if (next == fence) throw new NoSuchElementException();
+            T value = key(next);
+            next = successor(next);
+            return value;
+        }
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        if (compare(fromElement, toElement) > 0) throw new IllegalArgumentException();
+        return new SubFrozenAVLTree(fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        if (toElement == null) throw new NullPointerException();
+        return new SubFrozenAVLTree(null, toElement);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        if (fromElement == null) throw new NullPointerException();
+        return new SubFrozenAVLTree(fromElement, null);
+    }
+
+    private class SubFrozenAVLTree extends AbstractSet<T> implements SortedSet<T> {
+        final T bottom;
+        final T top;
+
+        private SubFrozenAVLTree(T bottom, T top) {
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        private boolean check(T value) {
+            return (bottom == null || compare(value, bottom) >= 0) && (top == null || compare(value, top) < 0);
+        }
+
+        private boolean inClosedRange(T value) {
+            return (bottom == null || compare(value, bottom) >= 0) && (top == null || compare(value, top) <= 0);
+        }
+
+        private int low() {
+            return bottom == null ? (size == 0 ? 0 : leftmost(1)) : search(bottom, true);
+        }
+
+        private int high() {
+            return top == null ? 0 : search(top, true);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, rankOf(high()) - rankOf(low()));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && FrozenAVLTree.this.contains(t);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            throw new UnsupportedOperationException("frozen set is immutable");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("frozen set is immutable");
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return isEmpty() ? Collections.<T>emptyIterator() : new EytzingerIterator(low(), high());
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            if (compare(fromElement, toElement) > 0 || !inClosedRange(fromElement) || !inClosedRange(toElement))
+                throw new IllegalArgumentException();
+            return new SubFrozenAVLTree(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            if (!inClosedRange(toElement)) throw new IllegalArgumentException();
+            return new SubFrozenAVLTree(bottom, toElement);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            if (!inClosedRange(fromElement)) throw new IllegalArgumentException();
+            return new SubFrozenAVLTree(fromElement, top);
+        }
+
+        @Override
+        public T first() {
+            if (isEmpty()) throw new NoSuchElementException();
+            return key(low());
+        }
+
+        @Override
+        public T last() {
+            if (isEmpty()) throw new NoSuchElementException();
+            int high = high();
+            return key(high == 0 ? rightmost(1) : predecessor(high));
+        }
+    }
+}
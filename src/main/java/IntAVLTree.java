@@ -0,0 +1,308 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+public class IntAVLTree {
+    private static final int NIL = 0;
+
+    // node i lives at index i of the parallel arrays; index 0 is the empty subtree
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    private byte[] height;
+    private int root = NIL;
+    private int free = NIL;
+    private int used = 1;
+    int size = 0;
+
+    public IntAVLTree() {
+        this(16);
+    }
+
+    public IntAVLTree(int initialCapacity) {
+        if (initialCapacity < 0) throw new IllegalArgumentException("initialCapacity < 0: " + initialCapacity);
+        int capacity = initialCapacity + 1;
+        keys = new int[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        height = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        root = NIL;
+        free = NIL;
+        used = 1;
+        size = 0;
+    }
+
+    public boolean contains(int value) {
+        int node = root;
+        while (node != NIL) {
+            int current = keys[node];
+            if (value < current) {
+                node = left[node];
+            } else if (value > current) {
+                node = right[node];
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean add(int value) {
+        int oldSize = size;
+        root = add(root, value);
+        return size != oldSize;
+    }
+
+    private int add(int node, int value) {
+        if (node == NIL) {
+            size++;
+            return newNode(value);
+        }
+        int current = keys[node];
+        // add may grow the arrays, so store the child only after it returns
+        if (value < current) {
+            int child = add(left[node], value);
+            left[node] = child;
+        } else if (value > current) {
+            int child = add(right[node], value);
+            right[node] = child;
+        } else {
+            return node;
+        }
+        return rebalanceTree(node);
+    }
+
+    public boolean remove(int value) {
+        int oldSize = size;
+        root = remove(root, value);
+        return size != oldSize;
+    }
+
+    private int remove(int node, int value) {
+        if (node == NIL) return NIL;
+        int current = keys[node];
+        if (value < current) {
+            left[node] = remove(left[node], value);
+        } else if (value > current) {
+            right[node] = remove(right[node], value);
+        } else {
+            size--;
+            if (left[node] == NIL || right[node] == NIL) {
+                int child = left[node] == NIL ? right[node] : left[node];
+                freeNode(node);
+                return child;
+            }
+            int mostLeftChild = right[node];
+            while (left[mostLeftChild] != NIL) mostLeftChild = left[mostLeftChild];
+            keys[node] = keys[mostLeftChild];
+            right[node] = removeMostLeftChild(right[node]);
+        }
+        return rebalanceTree(node);
+    }
+
+    private int removeMostLeftChild(int node) {
+        if (left[node] == NIL) {
+            int child = right[node];
+            freeNode(node);
+            return child;
+        }
+        left[node] = removeMostLeftChild(left[node]);
+        return rebalanceTree(node);
+    }
+
+    public int first() {
+        if (root == NIL) throw new NoSuchElementException();
+        int node = root;
+        while (left[node] != NIL) node = left[node];
+        return keys[node];
+    }
+
+    public int last() {
+        if (root == NIL) throw new NoSuchElementException();
+        int node = root;
+        while (right[node] != NIL) node = right[node];
+        return keys[node];
+    }
+
+    private int newNode(int value) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left[node];
+        } else {
+            if (used == keys.length) grow();
+            node = used++;
+        }
+        keys[node] = value;
+        left[node] = NIL;
+        right[node] = NIL;
+        height[node] = 1;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        left[node] = free;
+        free = node;
+    }
+
+    private void grow() {
+        int capacity = Math.max(keys.length + (keys.length >> 1), 16);
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+
+    private void update(int node) {
+        height[node] = (byte) (1 + Math.max(height[left[node]], height[right[node]]));
+    }
+
+    private int rotateLeftSmall(int node) {
+        int c = right[node];
+        right[node] = left[c];
+        left[c] = node;
+        update(node);
+        update(c);
+        return c;
+    }
+
+    private int rotateLeftLarge(int node) {
+        int c = right[node];
+        int d = left[c];
+        right[node] = left[d];
+        left[c] = right[d];
+        left[d] = node;
+        right[d] = c;
+        update(node);
+        update(c);
+        update(d);
+        return d;
+    }
+
+    private int rotateRightSmall(int node) {
+        int b = left[node];
+        left[node] = right[b];
+        right[b] = node;
+        update(node);
+        update(b);
+        return b;
+    }
+
+    private int rotateRightLarge(int node) {
+        int b = left[node];
+        int e = right[b];
+        right[b] = left[e];
+        left[node] = right[e];
+        left[e] = b;
+        right[e] = node;
+        update(b);
+        update(node);
+        update(e);
+        return e;
+    }
+
+    private int rebalanceTree(int node) {
+        int l = left[node];
+        int r = right[node];
+        if (height[r] - height[l] == 2) {
+            node = height[left[r]] <= height[right[r]] ? rotateLeftSmall(node) : rotateLeftLarge(node);
+        } else if (height[l] - height[r] == 2) {
+            node = height[right[l]] <= height[left[l]] ? rotateRightSmall(node) : rotateRightLarge(node);
+        } else {
+            update(node);
+        }
+        return node;
+    }
+
+    public Cursor cursor() {
+        return new Cursor(false, 0, false, 0);
+    }
+
+    // iterates the values in [from, to)
+    public Cursor cursor(int from, int to) {
+        if (from > to) throw new IllegalArgumentException();
+        return new Cursor(true, from, true, to);
+    }
+
+    public class Cursor implements PrimitiveIterator.OfInt {
+        private final boolean bounded;
+        private final int fence;
+        private int[] nodesStack;
+        private int depth;
+        private int currentNode = NIL;
+
+        private Cursor(boolean seek, int from, boolean bounded, int fence) {
+            this.bounded = bounded;
+            this.fence = fence;
+            nodesStack = new int[Math.max(1, height[root])];
+            if (seek) {
+                seek(from);
+            } else {
+                addLeftBranch(root);
+            }
+        }
+
+        private void addLeftBranch(int node) {
+            while (node != NIL) {
+                push(node);
+                node = left[node];
+            }
+        }
+
+        private void seek(int value) {
+            depth = 0;
+            int node = root;
+            while (node != NIL) {
+                if (keys[node] >= value) {
+                    push(node);
+                    node = left[node];
+                } else {
+                    node = right[node];
+                }
+            }
+        }
+
+        private void push(int node) {
+            if (depth == nodesStack.length) nodesStack = Arrays.copyOf(nodesStack, depth * 2);
+            nodesStack[depth++] = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && (!bounded || keys[nodesStack[depth - 1]] < fence);
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            currentNode = nodesStack[--depth];
+            addLeftBranch(right[currentNode]);
+            return keys[currentNode];
+        }
+
+        @Override
+        public void remove() {
+            if (currentNode == NIL) throw new IllegalStateException();
+            int value = keys[currentNode];
+            IntAVLTree.this.remove(value);
+            currentNode = NIL;
+            // rotations may have moved the remaining nodes, so rebuild the stack of the successor
+            if (value != Integer.MAX_VALUE) {
+                seek(value + 1);
+            } else {
+                depth = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class IntervalTree extends AugmentedAVLTree<IntervalTree.Interval, Long> {
+    /*
+        intervals are ordered by start, then end, and every subtree caches the largest end in it,
+        as a primitive long on an IntervalNode rather than as a boxed monoid aggregate. A query
+        walks the intervals in start order and skips any subtree whose largest end falls before
+        the query, and stops at the first start after it
+     */
+    private static final Monoid<Interval, Long> MAX_END = Monoid.from(Long.MIN_VALUE, Interval::end, Math::max);
+    private static final int MAX_DEPTH = 64;
+
+    static final class IntervalNode extends Node<Interval> {
+        long maxEnd;
+
+        IntervalNode(Interval value) {
+            super(value);
+            maxEnd = value.end;
+        }
+    }
+
+    // the closed range [start, end]
+    public static final class Interval implements Comparable<Interval> {
+        private final long start;
+        private final long end;
+
+        public Interval(long start, long end) {
+            if (start > end) throw new IllegalArgumentException("start " + start + " > end " + end);
+            this.start = start;
+            this.end = end;
+        }
+
+        public long start() {
+            return start;
+        }
+
+        public long end() {
+            return end;
+        }
+
+        public boolean overlaps(long from, long to) {
+            return start <= to && end >= from;
+        }
+
+        @Override
+        public int compareTo(Interval other) {
+            int comparison = Long.compare(start, other.start);
+            return comparison != 0 ? comparison : Long.compare(end, other.end);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Interval)) return false;
+            Interval other = (Interval) o;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(start) * 31 + Long.hashCode(end);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + "]";
+        }
+    }
+
+    public IntervalTree() {
+        super(MAX_END);
+    }
+
+    @Override
+    IntervalTree newTree() {
+        return new IntervalTree();
+    }
+
+    @Override
+    Node<Interval> newNode(Interval value) {
+        return new IntervalNode(value);
+    }
+
+    @Override
+    void updateAggregate(Node<Interval> node) {
+        long maxEnd = Math.max(maxEnd(node.left), maxEnd(node.right));
+        ((IntervalNode) node).maxEnd = Math.max(node.value.end, maxEnd);
+    }
+
+    // boxes, for the monoid folds of aggregate() and aggregate(from, to) only
+    @Override
+    Long aggregate(Node<Interval> node) {
+        return maxEnd(node);
+    }
+
+    private static long maxEnd(Node<Interval> node) {
+        return node == null ? Long.MIN_VALUE : ((IntervalNode) node).maxEnd;
+    }
+
+    public boolean add(long start, long end) {
+        return add(new Interval(start, end));
+    }
+
+    public boolean remove(long start, long end) {
+        return remove(new Interval(start, end));
+    }
+
+    // the intervals that contain point, in start order
+    public Cursor stabbing(long point) {
+        return overlapping(point, point);
+    }
+
+    // the intervals that share at least one point with [from, to], in start order
+    public Cursor overlapping(long from, long to) {
+        if (from > to) throw new IllegalArgumentException("from " + from + " > to " + to);
+        return new Cursor(from, to);
+    }
+
+    // finds each match lazily, so a query never holds more than one root-to-leaf path
+    public class Cursor implements Iterator<Interval> {
+        private final long from;
+        private final long to;
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final Node<Interval>[] nodesStack = (Node<Interval>[]) new Node[MAX_DEPTH];
+        private int depth;
+        private Interval next;
+
+        private Cursor(long from, long to) {
+            this.from = from;
+            this.to = to;
+            pushLeft(root);
+            advance();
+        }
+
+        // pushes the left spine of node, skipping subtrees that end before from or start after to
+        private void pushLeft(Node<Interval> node) {
+            while (node != null && maxEnd(node) >= from) {
+                if (node.value.start <= to) nodesStack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        private void advance() {
+            next = null;
+            while (depth > 0) {
+                Node<Interval> node = nodesStack[--depth];
+                pushLeft(node.right);
+                if (node.value.end >= from) {
+                    next = node.value;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Interval next() {
+            if (next == null) throw new NoSuchElementException();
+            Interval value = next;
+            advance();
+            return value;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import java.nio.ByteBuffer;
+
+// encodes keys into a fixed number of bytes at an absolute buffer offset
+public interface KeyCodec<T> {
+    int width();
+
+    void write(ByteBuffer buffer, int offset, T value);
+
+    T read(ByteBuffer buffer, int offset);
+
+    @SuppressWarnings("unchecked")
+    default int compare(ByteBuffer buffer, int offset, T value) {
+        return ((Comparable<? super T>) read(buffer, offset)).compareTo(value);
+    }
+
+    KeyCodec<Integer> INT = new KeyCodec<Integer>() {
+        @Override
+        public int width() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+
+        @Override
+        public int compare(ByteBuffer buffer, int offset, Integer value) {
+            return Integer.compare(buffer.getInt(offset), value);
+        }
+    };
+
+    KeyCodec<Long> LONG = new KeyCodec<Long>() {
+        @Override
+        public int width() {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+
+        @Override
+        public int compare(ByteBuffer buffer, int offset, Long value) {
+            return Long.compare(buffer.getLong(offset), value);
+        }
+    };
+}
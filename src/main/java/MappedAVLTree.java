@@ -0,0 +1,207 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class MappedAVLTree<T extends Comparable<T>> extends OffHeapAVLTree<T> implements Closeable {
+    /*
+        file layout, little endian:
+
+        | magic | version | key width | record size | root | free | used | size | dirty | ... | chunk 0 | chunk 1 | ...
+
+        the header takes the first HEADER_SIZE bytes and names the last checkpoint. Checkpoints are
+        copy-on-write: a record the checkpointed root can reach is never rewritten, changes go to
+        copies, and the records they unlink are only reused after the next force(). The first
+        change after a checkpoint sets dirty, and opening a dirty file, one whose writer stopped
+        without a checkpoint, drops those changes and rebuilds the free list from the root
+     */
+    static final int MAGIC = 0x41564C54;
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 4096;
+    private static final int DIRTY = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] mappedChunks = new MappedByteBuffer[0];
+    private boolean dirty;
+    // records allocated since the last checkpoint; every other record is sealed
+    private final BitSet unsealed = new BitSet();
+    // sealed records unlinked since the last checkpoint
+    private int[] released = new int[16];
+    private int releasedCount;
+    // clear() unlinked every record below this one
+    private int clearedBelow = NIL;
+
+    private MappedAVLTree(FileChannel channel, KeyCodec<T> codec) throws IOException {
+        super(codec);
+        this.channel = channel;
+        boolean created = channel.size() == 0;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        if (created) {
+            writeHeader(codec);
+            header.force();
+            return;
+        }
+        if (header.getInt(0) != MAGIC) throw new IOException("not an AVLTree file");
+        if (header.getInt(4) != VERSION) throw new IOException("unsupported format version " + header.getInt(4));
+        if (header.getInt(8) != codec.width() || header.getInt(12) != recordSize) {
+            throw new IOException("file was written with " + header.getInt(8) + "-byte keys, codec uses " + codec.width());
+        }
+        root = header.getInt(16);
+        free = header.getInt(20);
+        used = header.getInt(24);
+        size = header.getInt(28);
+        if (used < 1 || (long) used * recordSize > channel.size()) throw new IOException("corrupt header");
+        ensureChunks(used);
+        if (header.getInt(DIRTY) != 0) recover();
+    }
+
+    // opens the tree stored in file, creating an empty one if the file does not exist
+    public static <T extends Comparable<T>> MappedAVLTree<T> open(Path file, KeyCodec<T> codec) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            return new MappedAVLTree<>(channel, codec);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the free list may have handed out records since the checkpoint, so only the root is trusted
+    private void recover() throws IOException {
+        size = rebuildFreeList();
+        if (size < 0) throw new IOException("corrupt tree");
+        forceChunks();
+        writeState();
+        header.putInt(DIRTY, 0);
+        header.force();
+    }
+
+    @Override
+    ByteBuffer allocateChunk(int index, int bytes) {
+        try {
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + (long) index * bytes, bytes);
+            if (index >= mappedChunks.length) {
+                mappedChunks = Arrays.copyOf(mappedChunks, index + 1);
+            }
+            mappedChunks[index] = chunk;
+            return chunk.order(ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    boolean sealed(int node) {
+        return !unsealed.get(node);
+    }
+
+    @Override
+    void allocated(int node) {
+        unsealed.set(node);
+    }
+
+    @Override
+    void release(int node) {
+        if (!sealed(node)) {
+            freeNode(node);
+            return;
+        }
+        if (releasedCount == released.length) released = Arrays.copyOf(released, releasedCount * 2);
+        released[releasedCount++] = node;
+    }
+
+    @Override
+    public boolean add(T value) {
+        markDirty();
+        return super.add(value);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        markDirty();
+        return super.remove(o);
+    }
+
+    @Override
+    public void clear() {
+        markDirty();
+        root = NIL;
+        size = 0;
+        // the free list may run through records the checkpoint can reach, so it restarts from used
+        free = NIL;
+        clearedBelow = used;
+        releasedCount = 0;
+        unsealed.clear();
+    }
+
+    private void markDirty() {
+        if (dirty) return;
+        dirty = true;
+        header.putInt(DIRTY, 1);
+        header.force();
+    }
+
+    private void writeHeader(KeyCodec<T> codec) {
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, codec.width());
+        header.putInt(12, recordSize);
+        writeState();
+    }
+
+    private void writeState() {
+        header.putInt(24, used);
+        header.putInt(16, root);
+        header.putInt(20, free);
+        header.putInt(28, size);
+    }
+
+    private void forceChunks() {
+        for (MappedByteBuffer chunk : mappedChunks) {
+            if (chunk != null) chunk.force();
+        }
+    }
+
+    /*
+        checkpoint: flushes the new records and publishes the new root while the header is still
+        dirty, then recycles the records that root no longer reaches and marks the header clean.
+        A crash in between only costs recovery on the next open()
+     */
+    public void force() {
+        if (!dirty) return;
+        forceChunks();
+        writeState();
+        header.force();
+
+        for (int node = NIL + 1; node < clearedBelow; node++) {
+            freeNode(node);
+        }
+        for (int i = 0; i < releasedCount; i++) {
+            freeNode(released[i]);
+        }
+        clearedBelow = NIL;
+        releasedCount = 0;
+        unsealed.clear();
+        forceChunks();
+        writeState();
+        header.putInt(DIRTY, 0);
+        header.force();
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+// an associative combine with an identity, folded over the values of a tree in order
+public interface Monoid<T, A> {
+    A identity();
+
+    A of(T value);
+
+    A combine(A left, A right);
+
+    static <T> Monoid<T, Integer> count() {
+        return from(0, value -> 1, Integer::sum);
+    }
+
+    static <T> Monoid<T, Long> sumLong(ToLongFunction<? super T> field) {
+        return from(0L, field::applyAsLong, Long::sum);
+    }
+
+    static <T> Monoid<T, Double> sumDouble(ToDoubleFunction<? super T> field) {
+        return from(0.0, field::applyAsDouble, Double::sum);
+    }
+
+    // the smallest field value, null over an empty range
+    static <T, R extends Comparable<? super R>> Monoid<T, R> min(Function<? super T, ? extends R> field) {
+        return from(null, field::apply, (a, b) -> a == null ? b : b == null || a.compareTo(b) <= 0 ? a : b);
+    }
+
+    // the largest field value, null over an empty range
+    static <T, R extends Comparable<? super R>> Monoid<T, R> max(Function<? super T, ? extends R> field) {
+        return from(null, field::apply, (a, b) -> a == null ? b : b == null || a.compareTo(b) >= 0 ? a : b);
+    }
+
+    static <T, A> Monoid<T, A> from(A identity, Function<? super T, ? extends A> lift, BinaryOperator<A> combine) {
+        return new Monoid<T, A>() {
+            @Override
+            public A identity() {
+                return identity;
+            }
+
+            @Override
+            public A of(T value) {
+                return lift.apply(value);
+            }
+
+            @Override
+            public A combine(A left, A right) {
+                return combine.apply(left, right);
+            }
+        };
+    }
+}
@@ -0,0 +1,590 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+public class OffHeapAVLTree<T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
+    /*
+        record layout, padded to a multiple of 4 bytes:
+
+        | left: int | right: int | size: int | height: byte | key: codec.width() bytes |
+
+        nodes are numbered from 1, node 0 is the empty subtree. size counts the records of the
+        subtree, which gives views their size in O(log n)
+     */
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int SIZE = 8;
+    private static final int HEIGHT = 12;
+    private static final int KEY = 13;
+    static final int NIL = 0;
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+
+    private final KeyCodec<T> codec;
+    final int recordSize;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    int root = NIL;
+    int free = NIL;
+    int used = 1;
+    int size = 0;
+
+    public OffHeapAVLTree(KeyCodec<T> codec) {
+        this.codec = codec;
+        this.recordSize = (KEY + codec.width() + 3) & ~3;
+    }
+
+    // hands out the buffer backing records [index * CHUNK_RECORDS, (index + 1) * CHUNK_RECORDS)
+    ByteBuffer allocateChunk(int index, int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void ensureChunks(int records) {
+        int count = (records + CHUNK_RECORDS - 1) >>> CHUNK_BITS;
+        if (count <= chunks.length) return;
+        ByteBuffer[] grown = Arrays.copyOf(chunks, count);
+        for (int i = chunks.length; i < count; i++) {
+            grown[i] = allocateChunk(i, CHUNK_RECORDS * recordSize);
+        }
+        chunks = grown;
+    }
+
+    private ByteBuffer chunk(int node) {
+        return chunks[node >>> CHUNK_BITS];
+    }
+
+    private int offset(int node) {
+        return (node & (CHUNK_RECORDS - 1)) * recordSize;
+    }
+
+    private int left(int node) {
+        return chunk(node).getInt(offset(node) + LEFT);
+    }
+
+    private int right(int node) {
+        return chunk(node).getInt(offset(node) + RIGHT);
+    }
+
+    private int getHeight(int node) {
+        return node == NIL ? 0 : chunk(node).get(offset(node) + HEIGHT);
+    }
+
+    private int getSize(int node) {
+        return node == NIL ? 0 : chunk(node).getInt(offset(node) + SIZE);
+    }
+
+    private void setLeft(int node, int child) {
+        chunk(node).putInt(offset(node) + LEFT, child);
+    }
+
+    private void setRight(int node, int child) {
+        chunk(node).putInt(offset(node) + RIGHT, child);
+    }
+
+    private T key(int node) {
+        return codec.read(chunk(node), offset(node) + KEY);
+    }
+
+    private int compare(int node, T value) {
+        return codec.compare(chunk(node), offset(node) + KEY, value);
+    }
+
+    private void update(int node) {
+        int height = 1 + Math.max(getHeight(left(node)), getHeight(right(node)));
+        chunk(node).putInt(offset(node) + SIZE, 1 + getSize(left(node)) + getSize(right(node)));
+        chunk(node).put(offset(node) + HEIGHT, (byte) height);
+    }
+
+    /*
+        MappedAVLTree seals the records its last checkpoint can reach: a sealed record is copied
+        before it changes, and once unlinked it goes to release() rather than back to the free list
+     */
+
+    boolean sealed(int node) {
+        return false;
+    }
+
+    void allocated(int node) {
+    }
+
+    void release(int node) {
+        freeNode(node);
+    }
+
+    private int allocate() {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = left(node);
+        } else {
+            if (used == Integer.MAX_VALUE) throw new IllegalStateException("arena is full");
+            ensureChunks(used + 1);
+            node = used++;
+        }
+        allocated(node);
+        return node;
+    }
+
+    private int newNode(T value) {
+        int node = allocate();
+        ByteBuffer chunk = chunk(node);
+        int offset = offset(node);
+        chunk.putInt(offset + LEFT, NIL);
+        chunk.putInt(offset + RIGHT, NIL);
+        chunk.putInt(offset + SIZE, 1);
+        chunk.put(offset + HEIGHT, (byte) 1);
+        codec.write(chunk, offset + KEY, value);
+        return node;
+    }
+
+    // node itself, or a copy of it when it is sealed
+    private int unsealed(int node) {
+        if (!sealed(node)) return node;
+        int copy = allocate();
+        ByteBuffer source = chunk(node);
+        ByteBuffer target = chunk(copy);
+        int sourceOffset = offset(node);
+        int targetOffset = offset(copy);
+        for (int i = 0; i < recordSize; i += 4) {
+            target.putInt(targetOffset + i, source.getInt(sourceOffset + i));
+        }
+        release(node);
+        return copy;
+    }
+
+    void freeNode(int node) {
+        setLeft(node, free);
+        free = node;
+    }
+
+    // threads every record unreachable from root onto a new free list and returns how many are
+    // reachable, or -1 when a link leaves the arena or reaches a record twice
+    int rebuildFreeList() {
+        BitSet reachable = new BitSet(used);
+        int[] nodesStack = new int[64];
+        int depth = 0;
+        int count = 0;
+        if (root != NIL) nodesStack[depth++] = root;
+        while (depth > 0) {
+            int node = nodesStack[--depth];
+            if (node <= NIL || node >= used || reachable.get(node)) return -1;
+            reachable.set(node);
+            count++;
+            if (depth + 2 > nodesStack.length) nodesStack = Arrays.copyOf(nodesStack, nodesStack.length * 2);
+            if (left(node) != NIL) nodesStack[depth++] = left(node);
+            if (right(node) != NIL) nodesStack[depth++] = right(node);
+        }
+        free = NIL;
+        for (int node = used - 1; node > NIL; node--) {
+            if (!reachable.get(node)) freeNode(node);
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        root = NIL;
+        free = NIL;
+        used = 1;
+        size = 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        int node = root;
+        while (node != NIL) {
+            int comparison = compare(node, t);
+            if (comparison > 0) {
+                node = left(node);
+            } else if (comparison < 0) {
+                node = right(node);
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(T value) {
+        int oldSize = size;
+        root = add(root, value);
+        return size != oldSize;
+    }
+
+    private int add(int node, T value) {
+        if (node == NIL) {
+            size++;
+            return newNode(value);
+        }
+        int comparison = compare(node, value);
+        if (comparison == 0) return node;
+        int oldSize = size;
+        int child = add(comparison > 0 ? left(node) : right(node), value);
+        if (size == oldSize) return node;
+        node = unsealed(node);
+        if (comparison > 0) {
+            setLeft(node, child);
+        } else {
+            setRight(node, child);
+        }
+        return rebalanceTree(node);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        int oldSize = size;
+        root = remove(root, t);
+        return size != oldSize;
+    }
+
+    private int remove(int node, T value) {
+        if (node == NIL) return NIL;
+        int comparison = compare(node, value);
+        if (comparison != 0) {
+            int oldSize = size;
+            int child = remove(comparison > 0 ? left(node) : right(node), value);
+            if (size == oldSize) return node;
+            node = unsealed(node);
+            if (comparison > 0) {
+                setLeft(node, child);
+            } else {
+                setRight(node, child);
+            }
+        } else {
+            size--;
+            if (left(node) == NIL || right(node) == NIL) {
+                int child = left(node) == NIL ? right(node) : left(node);
+                release(node);
+                return child;
+            }
+            node = unsealed(node);
+            int mostLeftChild = right(node);
+            while (left(mostLeftChild) != NIL) mostLeftChild = left(mostLeftChild);
+            copyKey(mostLeftChild, node);
+            setRight(node, removeMostLeftChild(right(node)));
+        }
+        return rebalanceTree(node);
+    }
+
+    private void copyKey(int from, int to) {
+        ByteBuffer source = chunk(from);
+        ByteBuffer target = chunk(to);
+        int sourceOffset = offset(from) + KEY;
+        int targetOffset = offset(to) + KEY;
+        for (int i = 0; i < codec.width(); i++) {
+            target.put(targetOffset + i, source.get(sourceOffset + i));
+        }
+    }
+
+    private int removeMostLeftChild(int node) {
+        if (left(node) == NIL) {
+            int child = right(node);
+            release(node);
+            return child;
+        }
+        int child = removeMostLeftChild(left(node));
+        node = unsealed(node);
+        setLeft(node, child);
+        return rebalanceTree(node);
+    }
+
+    // the rotations below relink node, which the caller has unsealed, and unseal the children they change
+
+    private int rotateLeftSmall(int node) {
+        int c = unsealed(right(node));
+        setRight(node, left(c));
+        setLeft(c, node);
+        update(node);
+        update(c);
+        return c;
+    }
+
+    private int rotateLeftLarge(int node) {
+        int c = unsealed(right(node));
+        int d = unsealed(left(c));
+        setRight(node, left(d));
+        setLeft(c, right(d));
+        setLeft(d, node);
+        setRight(d, c);
+        update(node);
+        update(c);
+        update(d);
+        return d;
+    }
+
+    private int rotateRightSmall(int node) {
+        int b = unsealed(left(node));
+        setLeft(node, right(b));
+        setRight(b, node);
+        update(node);
+        update(b);
+        return b;
+    }
+
+    private int rotateRightLarge(int node) {
+        int b = unsealed(left(node));
+        int e = unsealed(right(b));
+        setRight(b, left(e));
+        setLeft(node, right(e));
+        setLeft(e, b);
+        setRight(e, node);
+        update(b);
+        update(node);
+        update(e);
+        return e;
+    }
+
+    private int rebalanceTree(int node) {
+        int l = left(node);
+        int r = right(node);
+        if (getHeight(r) - getHeight(l) == 2) {
+            node = getHeight(left(r)) <= getHeight(right(r)) ? rotateLeftSmall(node) : rotateLeftLarge(node);
+        } else if (getHeight(l) - getHeight(r) == 2) {
+            node = getHeight(right(l)) <= getHeight(left(l)) ? rotateRightSmall(node) : rotateRightLarge(node);
+        } else {
+            update(node);
+        }
+        return node;
+    }
+
+    // the number of values less than value
+    private int rank(T value) {
+        int rank = 0;
+        int node = root;
+        while (node != NIL) {
+            if (compare(node, value) < 0) {
+                rank += getSize(left(node)) + 1;
+                node = right(node);
+            } else {
+                node = left(node);
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return null;
+    }
+
+    @Override
+    public T first() {
+        if (root == NIL) throw new NoSuchElementException();
+        int node = root;
+        while (left(node) != NIL) node = left(node);
+        return key(node);
+    }
+
+    @Override
+    public T last() {
+        if (root == NIL) throw new NoSuchElementException();
+        int node = root;
+        while (right(node) != NIL) node = right(node);
+        return key(node);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new BinarySearchTreeIterator(null, null);
+    }
+
+    public class BinarySearchTreeIterator implements Iterator<T> {
+        private final T fence;
+        private int[] nodesStack;
+        private int depth;
+        private int currentNode = NIL;
+
+        // walks the values in [start, fence); a null bound is open
+        private BinarySearchTreeIterator(T start, T fence) {
+            this.fence = fence;
+            nodesStack = new int[Math.max(1, getHeight(root))];
+            if (start == null) {
+                addLeftBranch(root);
+            } else {
+                seek(start, true);
+            }
+        }
+
+        private void addLeftBranch(int node) {
+            while (node != NIL) {
+                push(node);
+                node = left(node);
+            }
+        }
+
+        private void seek(T value, boolean inclusive) {
+            depth = 0;
+            int node = root;
+            while (node != NIL) {
+                int comparison = compare(node, value);
+                if (comparison > 0 || (comparison == 0 && inclusive)) {
+                    push(node);
+                    node = left(node);
+                } else {
+                    node = right(node);
+                }
+            }
+        }
+
+        private void push(int node) {
+            if (depth == nodesStack.length) nodesStack = Arrays.copyOf(nodesStack, depth * 2);
+            nodesStack[depth++] = node;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && (fence == null || compare(nodesStack[depth - 1], fence) < 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            currentNode = nodesStack[--depth];
+            addLeftBranch(right(currentNode));
+            return key(currentNode);
+        }
+
+        @Override
+        public void remove() {
+            if (currentNode == NIL) throw new IllegalStateException();
+            T value = key(currentNode);
+            OffHeapAVLTree.this.remove(value);
+            currentNode = NIL;
+            // rotations may have moved the remaining nodes, so rebuild the stack of the successor
+            seek(value, false);
+        }
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        if (fromElement.compareTo(toElement) > 0) throw new IllegalArgumentException();
+        return new SubOffHeapAVLTree(fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        if (toElement == null) throw new NullPointerException();
+        return new SubOffHeapAVLTree(null, toElement);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        if (fromElement == null) throw new NullPointerException();
+        return new SubOffHeapAVLTree(fromElement, null);
+    }
+
+    private class SubOffHeapAVLTree extends AbstractSet<T> implements SortedSet<T> {
+        final T bottom;
+        final T top;
+
+        private SubOffHeapAVLTree(T bottom, T top) {
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        private boolean check(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) < 0);
+        }
+
+        @Override
+        public int size() {
+            return (top == null ? size : rank(top)) - (bottom == null ? 0 : rank(bottom));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && OffHeapAVLTree.this.contains(t);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return OffHeapAVLTree.this.add(value);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            if (!check(t)) throw new IllegalArgumentException();
+            return OffHeapAVLTree.this.remove(t);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new BinarySearchTreeIterator(bottom, top);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            if (fromElement.compareTo(toElement) > 0 || !inClosedRange(fromElement) || !inClosedRange(toElement))
+                throw new IllegalArgumentException();
+            return new SubOffHeapAVLTree(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            if (!inClosedRange(toElement)) throw new IllegalArgumentException();
+            return new SubOffHeapAVLTree(bottom, toElement);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            if (!inClosedRange(fromElement)) throw new IllegalArgumentException();
+            return new SubOffHeapAVLTree(fromElement, top);
+        }
+
+        private boolean inClosedRange(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) <= 0);
+        }
+
+        @Override
+        public T first() {
+            Iterator<T> iterator = iterator();
+            if (!iterator.hasNext()) throw new NoSuchElementException();
+            return iterator.next();
+        }
+
+        @Override
+        public T last() {
+            int result = NIL;
+            int node = root;
+            while (node != NIL) {
+                if (top == null || compare(node, top) < 0) {
+                    result = node;
+                    node = right(node);
+                } else {
+                    node = left(node);
+                }
+            }
+            if (result == NIL || !check(key(result))) throw new NoSuchElementException();
+            return key(result);
+        }
+    }
+}
@@ -0,0 +1,365 @@
+import java.util.*;
+
+public class PersistentAVLTree<T extends Comparable<T>> extends AbstractSet<T> implements SortedSet<T> {
+    /*
+        nodes are immutable: add and remove copy the O(log n) nodes on the search path and publish
+        the new root, so any root ever published stays a valid, frozen version of the set. The
+        path-copying engine below is static and package-private: ConcurrentAVLTree builds on it too
+     */
+    private volatile Node<T> root;
+    private final boolean frozen;
+
+    static final class Node<T> {
+        final T value;
+        final Node<T> left;
+        final Node<T> right;
+        final int height;
+        final int size;
+
+        Node(T value, Node<T> left, Node<T> right) {
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(getHeight(left), getHeight(right));
+            this.size = 1 + getSize(left) + getSize(right);
+        }
+    }
+
+    public PersistentAVLTree() {
+        this(null, false);
+    }
+
+    private PersistentAVLTree(Node<T> root, boolean frozen) {
+        this.root = root;
+        this.frozen = frozen;
+    }
+
+    // O(1): the returned set is immutable and shares every node with this one
+    public PersistentAVLTree<T> snapshot() {
+        return new PersistentAVLTree<>(root, true);
+    }
+
+    static int getHeight(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    static int getSize(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    @Override
+    public int size() {
+        return getSize(root);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        Node<T> node = root;
+        while (node != null) {
+            int comparison = t.compareTo(node.value);
+            if (comparison == 0) return true;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    private void checkMutable() {
+        if (frozen) throw new UnsupportedOperationException("snapshot is immutable");
+    }
+
+    @Override
+    public synchronized boolean add(T value) {
+        checkMutable();
+        if (value == null) throw new NullPointerException();
+        Node<T> oldRoot = root;
+        root = add(oldRoot, value);
+        return root != oldRoot;
+    }
+
+    // node with value added, or node itself when an equal value is already there
+    static <T extends Comparable<T>> Node<T> add(Node<T> node, T value) {
+        if (node == null) return new Node<>(value, null, null);
+        int comparison = node.value.compareTo(value);
+        if (comparison > 0) {
+            Node<T> left = add(node.left, value);
+            return left == node.left ? node : rebalanceTree(node.value, left, node.right);
+        } else if (comparison < 0) {
+            Node<T> right = add(node.right, value);
+            return right == node.right ? node : rebalanceTree(node.value, node.left, right);
+        }
+        return node;
+    }
+
+    @Override
+    public synchronized boolean remove(Object o) {
+        checkMutable();
+        @SuppressWarnings("unchecked")
+        T t = (T) o;
+        Node<T> oldRoot = root;
+        root = remove(oldRoot, t);
+        return root != oldRoot;
+    }
+
+    // node without value, or node itself when no equal value is there
+    static <T extends Comparable<T>> Node<T> remove(Node<T> node, T value) {
+        if (node == null) return null;
+        int comparison = node.value.compareTo(value);
+        if (comparison > 0) {
+            Node<T> left = remove(node.left, value);
+            return left == node.left ? node : rebalanceTree(node.value, left, node.right);
+        } else if (comparison < 0) {
+            Node<T> right = remove(node.right, value);
+            return right == node.right ? node : rebalanceTree(node.value, node.left, right);
+        }
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+        Node<T> mostLeftChild = node.right;
+        while (mostLeftChild.left != null) mostLeftChild = mostLeftChild.left;
+        return rebalanceTree(mostLeftChild.value, node.left, removeMostLeftChild(node.right));
+    }
+
+    private static <T> Node<T> removeMostLeftChild(Node<T> node) {
+        if (node.left == null) return node.right;
+        return rebalanceTree(node.value, removeMostLeftChild(node.left), node.right);
+    }
+
+    // builds the node (value, left, right), rotating with fresh nodes when the heights differ by two
+    private static <T> Node<T> rebalanceTree(T value, Node<T> left, Node<T> right) {
+        if (getHeight(left) > getHeight(right) + 1) {
+            if (getHeight(left.left) >= getHeight(left.right)) {
+                return new Node<>(left.value, left.left, new Node<>(value, left.right, right));
+            }
+            Node<T> e = left.right;
+            return new Node<>(e.value, new Node<>(left.value, left.left, e.left), new Node<>(value, e.right, right));
+        }
+        if (getHeight(right) > getHeight(left) + 1) {
+            if (getHeight(right.right) >= getHeight(right.left)) {
+                return new Node<>(right.value, new Node<>(value, left, right.left), right.right);
+            }
+            Node<T> d = right.left;
+            return new Node<>(d.value, new Node<>(value, left, d.left), new Node<>(right.value, d.right, right.right));
+        }
+        return new Node<>(value, left, right);
+    }
+
+    @Override
+    public synchronized void clear() {
+        checkMutable();
+        root = null;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return null;
+    }
+
+    @Override
+    public T first() {
+        Node<T> node = root;
+        if (node == null) throw new NoSuchElementException();
+        while (node.left != null) node = node.left;
+        return node.value;
+    }
+
+    @Override
+    public T last() {
+        Node<T> node = root;
+        if (node == null) throw new NoSuchElementException();
+        while (node.right != null) node = node.right;
+        return node.value;
+    }
+
+    // the number of values less than value
+    static <T extends Comparable<T>> int rank(Node<T> node, T value) {
+        int rank = 0;
+        while (node != null) {
+            if (value.compareTo(node.value) > 0) {
+                rank += getSize(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return rank;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new BinarySearchTreeIterator(root, null, null);
+    }
+
+    // iterates the version of the tree that was current when it was created
+    public class BinarySearchTreeIterator implements Iterator<T> {
+        private final T fence;
+        private Node<T>[] nodesStack;
+        private int depth;
+        private T lastReturned;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private BinarySearchTreeIterator(Node<T> root, T start, T fence) {
+            this.fence = fence;
+            nodesStack = (Node<T>[]) new Node[Math.max(1, getHeight(root))];
+            Node<T> n = root;
+            while (n != null) {
+                if (start == null || n.value.compareTo(start) >= 0) {
+                    nodesStack[depth++] = n;
+                    n = n.left;
+                } else {
+                    n = n.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && (fence == null || nodesStack[depth - 1].value.compareTo(fence) < 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<T> node = nodesStack[--depth];
+            for (Node<T> n = node.right; n != null; n = n.left) {
+                nodesStack[depth++] = n;
+            }
+            lastReturned = node.value;
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) throw new IllegalStateException();
+            PersistentAVLTree.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+
+    @Override
+    public SortedSet<T> subSet(T fromElement, T toElement) {
+        if (fromElement.compareTo(toElement) > 0) throw new IllegalArgumentException();
+        return new SubPersistentAVLTree(fromElement, toElement);
+    }
+
+    @Override
+    public SortedSet<T> headSet(T toElement) {
+        if (toElement == null) throw new NullPointerException();
+        return new SubPersistentAVLTree(null, toElement);
+    }
+
+    @Override
+    public SortedSet<T> tailSet(T fromElement) {
+        if (fromElement == null) throw new NullPointerException();
+        return new SubPersistentAVLTree(fromElement, null);
+    }
+
+    private class SubPersistentAVLTree extends AbstractSet<T> implements SortedSet<T> {
+        final T bottom;
+        final T top;
+
+        private SubPersistentAVLTree(T bottom, T top) {
+            this.bottom = bottom;
+            this.top = top;
+        }
+
+        private boolean check(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) < 0);
+        }
+
+        private boolean inClosedRange(T value) {
+            return (bottom == null || value.compareTo(bottom) >= 0) && (top == null || value.compareTo(top) <= 0);
+        }
+
+        @Override
+        public int size() {
+            Node<T> node = root;
+            int high = top == null ? getSize(node) : rank(node, top);
+            int low = bottom == null ? 0 : rank(node, bottom);
+            return Math.max(0, high - low);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !iterator().hasNext();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            return check(t) && PersistentAVLTree.this.contains(t);
+        }
+
+        @Override
+        public boolean add(T value) {
+            if (!check(value)) throw new IllegalArgumentException();
+            return PersistentAVLTree.this.add(value);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            @SuppressWarnings("unchecked")
+            T t = (T) o;
+            if (!check(t)) throw new IllegalArgumentException();
+            return PersistentAVLTree.this.remove(t);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new BinarySearchTreeIterator(root, bottom, top);
+        }
+
+        @Override
+        public Comparator<? super T> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<T> subSet(T fromElement, T toElement) {
+            if (fromElement.compareTo(toElement) > 0 || !inClosedRange(fromElement) || !inClosedRange(toElement))
+                throw new IllegalArgumentException();
+            return new SubPersistentAVLTree(fromElement, toElement);
+        }
+
+        @Override
+        public SortedSet<T> headSet(T toElement) {
+            if (!inClosedRange(toElement)) throw new IllegalArgumentException();
+            return new SubPersistentAVLTree(bottom, toElement);
+        }
+
+        @Override
+        public SortedSet<T> tailSet(T fromElement) {
+            if (!inClosedRange(fromElement)) throw new IllegalArgumentException();
+            return new SubPersistentAVLTree(fromElement, top);
+        }
+
+        @Override
+        public T first() {
+            Iterator<T> iterator = iterator();
+            if (!iterator.hasNext()) throw new NoSuchElementException();
+            return iterator.next();
+        }
+
+        @Override
+        public T last() {
+            Node<T> result = null;
+            Node<T> node = root;
+            while (node != null) {
+                if (top == null || node.value.compareTo(top) < 0) {
+                    result = node;
+                    node = node.right;
+                } else {
+                    node = node.left;
+                }
+            }
+            if (result == null || !check(result.value)) throw new NoSuchElementException();
+            return result.value;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class AVLTreeMapTest {
+
+    @Test
+    public void putGetRemoveTest() {
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>();
+        TreeMap<Integer, Integer> controlMap = new TreeMap<>();
+        Random random = new Random(47);
+        for (int i = 0; i < 100000; i++) {
+            Integer key = random.nextInt(5000);
+            Integer value = random.nextInt(100);
+            switch (random.nextInt(6)) {
+                case 0:
+                    assertEquals(controlMap.remove(key), map.remove(key));
+                    break;
+                case 1:
+                    assertEquals(controlMap.merge(key, value, Integer::sum), map.merge(key, value, Integer::sum));
+                    break;
+                case 2:
+                    assertEquals(controlMap.compute(key, (k, v) -> v == null ? value : v % 7 == 0 ? null : v + 1),
+                            map.compute(key, (k, v) -> v == null ? value : v % 7 == 0 ? null : v + 1));
+                    break;
+                case 3:
+                    assertEquals(controlMap.computeIfAbsent(key, k -> value), map.computeIfAbsent(key, k -> value));
+                    break;
+                case 4:
+                    assertEquals(controlMap.get(key), map.get(key));
+                    break;
+                default:
+                    assertEquals(controlMap.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(controlMap.size(), map.size());
+        assertEquals(controlMap, map);
+        assertEquals(map, controlMap);
+        assertEquals(controlMap.hashCode(), map.hashCode());
+        for (int key = -1; key < 5001; key += 13) {
+            assertEquals(controlMap.containsKey(key), map.containsKey(key));
+            assertEquals(controlMap.floorEntry(key), map.floorEntry(key));
+            assertEquals(controlMap.ceilingEntry(key), map.ceilingEntry(key));
+            assertEquals(controlMap.lowerKey(key), map.lowerKey(key));
+            assertEquals(controlMap.higherKey(key), map.higherKey(key));
+        }
+        assertEquals(controlMap.firstEntry(), map.firstEntry());
+        assertEquals(controlMap.lastKey(), map.lastKey());
+
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) entry.setValue(entry.getValue() * 2);
+        controlMap.replaceAll((k, v) -> v * 2);
+        assertEquals(controlMap, map);
+        assertEquals(controlMap.pollFirstEntry(), map.pollFirstEntry());
+        assertEquals(controlMap.pollLastEntry(), map.pollLastEntry());
+        assertEquals(controlMap, map);
+    }
+
+    @Test
+    public void viewTest() {
+        AVLTreeMap<Integer, String> map = new AVLTreeMap<>();
+        TreeMap<Integer, String> controlMap = new TreeMap<>();
+        for (int i = 0; i < 1000; i += 2) {
+            map.put(i, "v" + i);
+            controlMap.put(i, "v" + i);
+        }
+
+        NavigableMap<Integer, String> sub = map.subMap(100, true, 300, false);
+        NavigableMap<Integer, String> controlSub = controlMap.subMap(100, true, 300, false);
+        assertEquals(controlSub, sub);
+        assertEquals(controlSub.size(), sub.size());
+        assertEquals(controlSub.firstKey(), sub.firstKey());
+        assertEquals(controlSub.lastEntry(), sub.lastEntry());
+        assertNull(sub.get(500));
+        assertEquals(controlSub.headMap(200), sub.headMap(200));
+        sub.put(151, "x");
+        controlSub.put(151, "x");
+        assertEquals(controlMap, map);
+        try {
+            sub.put(400, "y");
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        NavigableMap<Integer, String> descending = map.descendingMap();
+        NavigableMap<Integer, String> controlDescending = controlMap.descendingMap();
+        assertEquals(new ArrayList<>(controlDescending.keySet()), new ArrayList<>(descending.keySet()));
+        assertEquals(controlDescending.firstKey(), descending.firstKey());
+        assertEquals(controlDescending.ceilingKey(151), descending.ceilingKey(151));
+        assertEquals(controlDescending.higherKey(151), descending.higherKey(151));
+        assertEquals(new ArrayList<>(controlDescending.subMap(300, 100).keySet()),
+                new ArrayList<>(descending.subMap(300, 100).keySet()));
+        assertEquals(new ArrayList<>(controlDescending.headMap(900).keySet()),
+                new ArrayList<>(descending.headMap(900).keySet()));
+        assertEquals(controlDescending.comparator().compare(1, 2), descending.comparator().compare(1, 2));
+        assertEquals(new ArrayList<>(controlMap.descendingKeySet()), new ArrayList<>(map.descendingKeySet()));
+
+        Iterator<Integer> keys = map.navigableKeySet().tailSet(800, true).iterator();
+        while (keys.hasNext()) {
+            if (keys.next() % 4 == 0) keys.remove();
+        }
+        controlMap.tailMap(800, true).keySet().removeIf(key -> key % 4 == 0);
+        assertEquals(controlMap, map);
+        assertTrue(map.entrySet().remove(new AbstractMap.SimpleEntry<>(2, "v2")));
+        assertFalse(map.entrySet().remove(new AbstractMap.SimpleEntry<>(4, "wrong")));
+        controlMap.remove(2);
+        assertEquals(controlMap, map);
+
+        AVLTreeMap<String, Integer> reversed = new AVLTreeMap<>(Comparator.reverseOrder());
+        reversed.put("a", 1);
+        reversed.put("c", 3);
+        reversed.put("b", 2);
+        assertEquals("c", reversed.firstKey());
+        assertEquals("b", reversed.higherKey("c"));
+    }
+
+    // the comparisons that a lookup of key makes; the counter starts from zero afterwards
+    private static int lookup(AVLTreeMap<Integer, Integer> map, int key, int[] comparisons) {
+        comparisons[0] = 0;
+        map.containsKey(key);
+        int lookup = comparisons[0];
+        comparisons[0] = 0;
+        return lookup;
+    }
+
+    @Test
+    public void computeTest() {
+        int[] comparisons = new int[1];
+        AVLTreeMap<Integer, Integer> map = new AVLTreeMap<>((a, b) -> {
+            comparisons[0]++;
+            return Integer.compare(a, b);
+        });
+        for (int i = 0; i < 4096; i += 2) map.put(i, i);
+
+        // a lookup's descent each, whether the function leaves, inserts, updates or unlinks the entry
+        for (int key = 1; key < 4096; key += 98) {
+            int descent = lookup(map, key, comparisons);
+            assertEquals(Integer.valueOf(key), map.computeIfAbsent(key, k -> k));
+            assertEquals(descent, comparisons[0]);
+            descent = lookup(map, key, comparisons);
+            assertNull(map.compute(key, (k, v) -> null));
+            assertEquals(descent, comparisons[0]);
+            descent = lookup(map, key, comparisons);
+            assertEquals(Integer.valueOf(key), map.merge(key, key, Integer::sum));
+            assertEquals(descent, comparisons[0]);
+            descent = lookup(map, key, comparisons);
+            assertNull(map.computeIfPresent(key, (k, v) -> null));
+            assertEquals(descent, comparisons[0]);
+        }
+        assertEquals(2048, map.size());
+
+        AVLTreeMap<Integer, Integer> small = new AVLTreeMap<>();
+        for (int i = 0; i < 10; i += 2) small.put(i, i);
+        try {
+            small.computeIfAbsent(1, k -> {
+                small.clear();
+                return k;
+            });
+            fail();
+        } catch (ConcurrentModificationException ignored) {
+        }
+        for (int i = 0; i < 10; i += 2) small.put(i, i);
+        try {
+            small.compute(5, (k, v) -> {
+                small.computeIfAbsent(7, k2 -> null);
+                return k;
+            });
+            fail();
+        } catch (ConcurrentModificationException ignored) {
+        }
+        assertEquals(5, small.size());
+        try {
+            map.subMap(0, 100).compute(200, (k, v) -> 1);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        assertEquals(Integer.valueOf(51), map.subMap(0, 100).merge(51, 51, Integer::sum));
+        assertEquals(Integer.valueOf(151), map.subMap(0, 100).computeIfPresent(51, (k, v) -> v + 100));
+        assertEquals(Integer.valueOf(151), map.get(51));
+
+        AVLTreeMap<String, Integer> nullable = new AVLTreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        TreeMap<String, Integer> controlNullable = new TreeMap<>(nullable.comparator());
+        for (String key : new String[]{"b", null, "a"}) {
+            assertEquals(controlNullable.merge(key, 1, Integer::sum), nullable.merge(key, 1, Integer::sum));
+        }
+        assertEquals(controlNullable.put(null, 5), nullable.put(null, 5));
+        assertEquals(controlNullable.get(null), nullable.get(null));
+        assertEquals(controlNullable.headMap("b"), nullable.headMap("b"));
+        assertEquals(controlNullable.firstKey(), nullable.firstKey());
+        assertEquals(controlNullable.remove(null), nullable.remove(null));
+        assertEquals(controlNullable, nullable);
+        try {
+            new AVLTreeMap<String, Integer>().get(null);
+            fail();
+        } catch (NullPointerException ignored) {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class AVLTreeMultisetTest {
+
+    @Test
+    public void countTest() {
+        AVLTreeMultiset<Integer> multiset = new AVLTreeMultiset<>();
+        TreeMap<Integer, Integer> controlMap = new TreeMap<>();
+        Random random = new Random(61);
+        long size = 0;
+        for (int i = 0; i < 50000; i++) {
+            Integer value = random.nextInt(1000);
+            int occurrences = random.nextInt(5);
+            int before = controlMap.getOrDefault(value, 0);
+            if (random.nextInt(3) == 0) {
+                assertEquals(before, multiset.remove(value, occurrences));
+                int after = Math.max(0, before - occurrences);
+                if (after == 0) controlMap.remove(value);
+                else controlMap.put(value, after);
+                size -= before - after;
+            } else {
+                assertEquals(before, multiset.add(value, occurrences));
+                if (before + occurrences > 0) controlMap.put(value, before + occurrences);
+                size += occurrences;
+            }
+        }
+
+        assertEquals(size, multiset.size());
+        assertEquals(new ArrayList<>(controlMap.keySet()), new ArrayList<>(multiset.elementSet()));
+        for (int value = 0; value < 1000; value++) {
+            assertEquals((int) controlMap.getOrDefault(value, 0), multiset.count(value));
+            assertEquals(controlMap.containsKey(value), multiset.contains(value));
+        }
+
+        List<Integer> expanded = new ArrayList<>();
+        controlMap.forEach((value, count) -> {
+            for (int i = 0; i < count; i++) expanded.add(value);
+        });
+        assertEquals(expanded, new ArrayList<>(multiset));
+
+        Iterator<Integer> iterator = multiset.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) iterator.remove();
+        }
+        controlMap.keySet().removeIf(value -> value % 2 == 0);
+        assertEquals(new ArrayList<>(controlMap.keySet()), new ArrayList<>(multiset.elementSet()));
+        assertEquals(controlMap.values().stream().mapToInt(Integer::intValue).sum(), multiset.size());
+    }
+
+    @Test
+    public void heavyDuplicatesTest() {
+        AVLTreeMultiset<String> multiset = new AVLTreeMultiset<>();
+        for (int i = 0; i < 100000; i++) multiset.add("key" + i % 10);
+        assertEquals(10000, multiset.add("key3", 5));
+        assertEquals(100005, multiset.size());
+        assertEquals(10, multiset.elementSet().size());
+        assertEquals(10005, multiset.count("key3"));
+        assertTrue(multiset.remove("key3"));
+        assertEquals(10004, multiset.remove("key3", Integer.MAX_VALUE));
+        assertEquals(0, multiset.count("key3"));
+        assertFalse(multiset.remove("key3"));
+        assertEquals(90000, multiset.size());
+        assertEquals(10000, multiset.remove("key2", 9999));
+        assertEquals(1, multiset.count("key2"));
+        assertEquals(80001, multiset.size());
+        assertEquals(1, multiset.add("key2", Integer.MAX_VALUE - 1));
+        try {
+            multiset.add("key2", 1);
+            fail();
+        } catch (ArithmeticException ignored) {
+        }
+        assertEquals(Integer.MAX_VALUE, multiset.count("key2"));
+        assertEquals(Integer.MAX_VALUE, multiset.remove("key2", Integer.MAX_VALUE));
+        assertEquals(80000, multiset.size());
+
+        try {
+            multiset.elementSet().remove("key1");
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            multiset.add("key1", -1);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        multiset.clear();
+        assertTrue(multiset.isEmpty());
+        assertFalse(multiset.iterator().hasNext());
+    }
+}
@@ -1,10 +1,22 @@
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.SortedSet;
+import java.util.Spliterator;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 public class AVLTreeTest {
 
@@ -42,6 +54,10 @@ public class AVLTreeTest {
         avl.addAll(list);
 
         assertEquals(5, avl.size());
+
+        assertFalse(avl.add(3));
+        assertFalse(avl.add(7));
+        assertEquals(5, avl.size());
     }
 
     @Test
@@ -98,6 +114,16 @@ public class AVLTreeTest {
         avl.removeAll(list);
 
         assertTrue(avl.isEmpty());
+
+        avl.add(5);
+        assertFalse(avl.remove(4));
+        assertFalse(avl.remove(6));
+        assertEquals(1, avl.size());
+        assertFalse(avl.contains(4));
+        assertFalse(avl.contains(6));
+        assertTrue(avl.remove(5));
+        assertFalse(avl.remove(5));
+        assertTrue(avl.isEmpty());
     }
 
     @Test
@@ -362,4 +388,650 @@ public class AVLTreeTest {
         assertTrue(subAvl.contains(15));
         assertTrue(subAvl.contains(16));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void bulkInsertRemoveTest() {
+        SortedSet<Integer> avl = new AVLTree<>();
+        SortedSet<Integer> controlSet = new TreeSet<>();
+
+        for (int i = 0; i < 100000; i++) {
+            avl.add(i);
+            controlSet.add(i);
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; i++) {
+            Integer value = random.nextInt(100000);
+            if (controlSet.remove(value)) avl.remove(value);
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+    }
+
+    @Test
+    public void churnAllocationTest() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        if (!threadBean.isThreadAllocatedMemorySupported()) return;
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        AVLTree<Integer> avl = new AVLTree<>();
+        Integer[] keys = new Integer[4096];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+            avl.add(keys[i]);
+        }
+        int[] order = new Random(7).ints(200000, 0, keys.length).toArray();
+
+        for (int i = 0; i < 20000; i++) {
+            avl.remove(keys[order[i]]);
+            avl.add(keys[order[i]]);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 20000; i < order.length; i++) {
+            avl.remove(keys[order[i]]);
+            avl.add(keys[order[i]]);
+        }
+        long perInsert = (threadBean.getThreadAllocatedBytes(threadId) - before) / (order.length - 20000);
+
+        // a two-element tree never rotates, so this is the size of a bare leaf
+        AVLTree<Integer> pair = new AVLTree<>();
+        pair.add(keys[0]);
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < order.length; i++) {
+            pair.add(keys[1]);
+            pair.remove(keys[1]);
+        }
+        long leaf = (threadBean.getThreadAllocatedBytes(threadId) - before) / order.length;
+
+        assertTrue("allocated " + perInsert + " bytes per insert, leaf is " + leaf, perInsert <= leaf);
+        assertEquals(keys.length, avl.size());
+    }
+
+    @Test
+    public void iteratorRemoveTest() {
+        SortedSet<Integer> avl = new AVLTree<>();
+        SortedSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            avl.add(i);
+            controlSet.add(i);
+        }
+
+        Iterator<Integer> iterator = avl.iterator();
+        Iterator<Integer> controlIterator = controlSet.iterator();
+        while (controlIterator.hasNext()) {
+            Integer value = controlIterator.next();
+            assertEquals(value, iterator.next());
+            if (value % 3 != 0) {
+                iterator.remove();
+                controlIterator.remove();
+            }
+        }
+        assertFalse(iterator.hasNext());
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        Iterator<Integer> emptyIterator = new AVLTree<Integer>().iterator();
+        assertFalse(emptyIterator.hasNext());
+        try {
+            emptyIterator.remove();
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void rankAndSelectTest() {
+        AVLTree<Integer> avl = new AVLTree<>();
+        for (int i = 0; i < 1000; i++) {
+            avl.add(i * 2);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, avl.rank(i * 2));
+            assertEquals(i + 1, avl.rank(i * 2 + 1));
+            assertEquals(Integer.valueOf(i * 2), avl.select(i));
+            assertEquals(Integer.valueOf(i * 2), avl.get(i));
+        }
+        assertEquals(0, avl.rank(-5));
+        assertEquals(1000, avl.rank(5000));
+
+        try {
+            avl.select(1000);
+            fail();
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        SortedSet<Integer> head = avl.headSet(100);
+        SortedSet<Integer> tail = avl.tailSet(1901);
+        SortedSet<Integer> sub = avl.subSet(11, 31);
+        assertEquals(50, head.size());
+        assertEquals(49, tail.size());
+        assertEquals(10, sub.size());
+        assertEquals(Integer.valueOf(12), ((AVLTree<Integer>) sub).select(0));
+        assertEquals(3, ((AVLTree<Integer>) sub).rank(17));
+
+        avl.remove(50);
+        avl.add(101);
+        assertEquals(49, head.size());
+        assertEquals(10, sub.size());
+    }
+
+    @Test
+    public void navigableTest() {
+        NavigableSet<Integer> avl = new AVLTree<>();
+        NavigableSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 200; i += 3) {
+            avl.add(i);
+            controlSet.add(i);
+        }
+
+        for (int i = -5; i < 210; i++) {
+            assertEquals(controlSet.lower(i), avl.lower(i));
+            assertEquals(controlSet.floor(i), avl.floor(i));
+            assertEquals(controlSet.ceiling(i), avl.ceiling(i));
+            assertEquals(controlSet.higher(i), avl.higher(i));
+        }
+
+        ArrayList<Integer> descending = new ArrayList<>();
+        Iterator<Integer> iterator = avl.descendingIterator();
+        while (iterator.hasNext()) descending.add(iterator.next());
+        assertArrayEquals(controlSet.descendingSet().toArray(), descending.toArray());
+        assertArrayEquals(controlSet.descendingSet().toArray(), avl.descendingSet().toArray());
+        assertEquals(controlSet.descendingSet().first(), avl.descendingSet().first());
+
+        assertEquals(controlSet.pollFirst(), avl.pollFirst());
+        assertEquals(controlSet.pollLast(), avl.pollLast());
+        assertEquals(controlSet.size(), avl.size());
+        assertNull(new AVLTree<Integer>().pollFirst());
+        assertNull(new AVLTree<Integer>().pollLast());
+    }
+
+    @Test
+    public void navigableViewTest() {
+        NavigableSet<Integer> avl = new AVLTree<>();
+        NavigableSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 100; i += 2) {
+            avl.add(i);
+            controlSet.add(i);
+        }
+
+        boolean[] flags = {true, false};
+        for (boolean fromInclusive : flags) {
+            for (boolean toInclusive : flags) {
+                NavigableSet<Integer> view = avl.subSet(20, fromInclusive, 60, toInclusive);
+                NavigableSet<Integer> controlView = controlSet.subSet(20, fromInclusive, 60, toInclusive);
+                assertEquals(controlView.size(), view.size());
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(controlView.contains(i), view.contains(i));
+                    assertEquals(controlView.lower(i), view.lower(i));
+                    assertEquals(controlView.floor(i), view.floor(i));
+                    assertEquals(controlView.ceiling(i), view.ceiling(i));
+                    assertEquals(controlView.higher(i), view.higher(i));
+                }
+                assertArrayEquals(controlView.descendingSet().toArray(), view.descendingSet().toArray());
+
+                NavigableSet<Integer> head = avl.headSet(40, toInclusive);
+                NavigableSet<Integer> tail = avl.tailSet(40, fromInclusive);
+                assertEquals(controlSet.headSet(40, toInclusive).size(), head.size());
+                assertEquals(controlSet.tailSet(40, fromInclusive).size(), tail.size());
+                assertEquals(controlSet.headSet(40, toInclusive).last(), head.floor(1000));
+                assertEquals(controlSet.tailSet(40, fromInclusive).first(), tail.ceiling(-1));
+            }
+        }
+
+        assertTrue(avl.subSet(20, 20).isEmpty());
+        assertTrue(avl.subSet(20, false, 20, true).isEmpty());
+
+        NavigableSet<Integer> view = avl.subSet(20, true, 60, false);
+        assertEquals(4, view.subSet(30, true, 36, true).size());
+        assertTrue(view.subSet(30, 30).isEmpty());
+        try {
+            view.subSet(10, true, 30, true);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            view.add(60);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        assertEquals(Integer.valueOf(20), view.pollFirst());
+        assertEquals(Integer.valueOf(58), view.pollLast());
+        assertFalse(avl.contains(20));
+        assertFalse(avl.contains(58));
+        assertEquals(18, view.size());
+    }
+
+    @Test
+    public void rangeIterationTest() {
+        NavigableSet<Integer> avl = new AVLTree<>();
+        NavigableSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            Integer value = random.nextInt(10000);
+            avl.add(value);
+            controlSet.add(value);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            int from = random.nextInt(10000);
+            int to = from + random.nextInt(10000 - from + 1);
+            boolean fromInclusive = random.nextBoolean();
+            boolean toInclusive = random.nextBoolean();
+            NavigableSet<Integer> view = avl.subSet(from, fromInclusive, to, toInclusive);
+            NavigableSet<Integer> controlView = controlSet.subSet(from, fromInclusive, to, toInclusive);
+            assertArrayEquals(controlView.toArray(), view.toArray());
+            assertEquals(controlView.isEmpty(), view.isEmpty());
+            if (!controlView.isEmpty()) {
+                assertEquals(controlView.first(), view.first());
+                assertEquals(controlView.last(), view.last());
+            }
+            assertArrayEquals(controlSet.headSet(from, fromInclusive).toArray(), avl.headSet(from, fromInclusive).toArray());
+            assertArrayEquals(controlSet.tailSet(to, toInclusive).toArray(), avl.tailSet(to, toInclusive).toArray());
+        }
+
+        SortedSet<Integer> view = avl.subSet(2500, 7500);
+        SortedSet<Integer> controlView = controlSet.subSet(2500, 7500);
+        Iterator<Integer> iterator = view.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) iterator.remove();
+        }
+        controlView.removeIf(value -> value % 2 == 0);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        view.clear();
+        controlView.clear();
+        assertTrue(view.isEmpty());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        try {
+            view.first();
+            fail();
+        } catch (NoSuchElementException ignored) {
+        }
+    }
+
+    @Test
+    public void fromSortedTest() {
+        for (int n = 0; n < 70; n++) {
+            ArrayList<Integer> list = new ArrayList<>();
+            for (int i = 0; i < n; i++) list.add(i * 2);
+
+            AVLTree<Integer> avl = AVLTree.fromSorted(list.iterator(), n);
+            assertEquals(n, avl.size());
+            assertArrayEquals(list.toArray(), avl.toArray());
+            for (int i = 0; i < n; i++) {
+                assertEquals(Integer.valueOf(i * 2), avl.select(i));
+            }
+            assertTrue(avl.add(-1));
+            assertTrue(avl.remove(-1));
+            assertEquals(n, avl.size());
+        }
+
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 10000; i++) controlSet.add(i * 7 % 10007);
+        AVLTree<Integer> avl = new AVLTree<>();
+        assertTrue(avl.addAll(controlSet));
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        AVLTree<Integer> copy = new AVLTree<>();
+        assertTrue(copy.addAll(avl));
+        assertArrayEquals(avl.toArray(), copy.toArray());
+        assertFalse(copy.addAll(controlSet));
+
+        AVLTree<Integer> reversed = new AVLTree<>();
+        reversed.addAll(controlSet.descendingSet());
+        assertArrayEquals(controlSet.toArray(), reversed.toArray());
+    }
+
+    @Test
+    public void setOperationsTest() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            AVLTree<Integer> first = new AVLTree<>();
+            AVLTree<Integer> second = new AVLTree<>();
+            TreeSet<Integer> controlFirst = new TreeSet<>();
+            TreeSet<Integer> controlSecond = new TreeSet<>();
+            for (int i = random.nextInt(500); i > 0; i--) {
+                Integer value = random.nextInt(1000);
+                first.add(value);
+                controlFirst.add(value);
+            }
+            for (int i = random.nextInt(50); i > 0; i--) {
+                Integer value = random.nextInt(1000);
+                second.add(value);
+                controlSecond.add(value);
+            }
+
+            AVLTree<Integer> union = AVLTree.fromSorted(first.iterator(), first.size());
+            union.union(second);
+            TreeSet<Integer> controlUnion = new TreeSet<>(controlFirst);
+            controlUnion.addAll(controlSecond);
+            assertArrayEquals(controlUnion.toArray(), union.toArray());
+
+            AVLTree<Integer> intersection = AVLTree.fromSorted(first.iterator(), first.size());
+            assertEquals(controlFirst.retainAll(controlSecond), intersection.retainAll(second));
+            assertArrayEquals(controlFirst.toArray(), intersection.toArray());
+
+            AVLTree<Integer> difference = AVLTree.fromSorted(union.iterator(), union.size());
+            difference.difference(second);
+            controlUnion.removeAll(controlSecond);
+            assertArrayEquals(controlUnion.toArray(), difference.toArray());
+            assertArrayEquals(controlSecond.toArray(), second.toArray());
+
+            int key = random.nextInt(1000);
+            AVLTree<Integer> tail = union.split(key);
+            assertTrue(union.isEmpty() || union.last() < key);
+            assertTrue(tail.isEmpty() || tail.first() >= key);
+            assertEquals(controlUnion.size() + controlSecond.size(), union.size() + tail.size());
+            union.join(tail);
+            assertTrue(tail.isEmpty());
+            for (int i = 0; i < union.size(); i++) {
+                assertEquals(i, union.rank(union.select(i)));
+            }
+        }
+
+        AVLTree<Integer> low = new AVLTree<>();
+        AVLTree<Integer> high = new AVLTree<>();
+        low.add(5);
+        high.add(5);
+        try {
+            low.join(high);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        AVLTree<Integer> avl = new AVLTree<>();
+        for (int i = 0; i < 100; i++) {
+            avl.add(i);
+        }
+        AVLTree<Integer> view = avl.subSet(20, true, 60, false);
+        AVLTree<Integer> viewTail = view.split(50);
+        assertArrayEquals(new Integer[]{50, 51, 52, 53, 54, 55, 56, 57, 58, 59}, viewTail.toArray());
+        assertEquals(30, view.size());
+        assertEquals(90, avl.size());
+        assertTrue(view.split(10).size() == 30 && view.isEmpty());
+        assertTrue(avl.subSet(0, true, 5, false).split(70).isEmpty());
+        view.join(viewTail);
+        assertTrue(viewTail.isEmpty());
+        assertEquals(10, view.size());
+        assertTrue(avl.contains(55));
+        try {
+            view.join(avl.split(95));
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void snapshotTest() throws IOException {
+        AVLTree<Long> avl = new AVLTree<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 20000; i++) avl.add((long) random.nextInt(1000000));
+
+        for (boolean compress : new boolean[]{false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            avl.writeTo(out, KeyCodec.LONG, compress);
+            out.write(42);
+
+            ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+            AVLTree<Long> copy = AVLTree.readFrom(in, KeyCodec.LONG);
+            assertArrayEquals(avl.toArray(), copy.toArray());
+            assertEquals(avl.size(), copy.size());
+            assertEquals(42, in.read());
+            assertTrue(copy.add(-1L));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((AVLTree<Long>) avl.subSet(1000L, 500000L)).writeTo(out, KeyCodec.LONG, true);
+        AVLTree<Long> range = AVLTree.readFrom(new ByteArrayInputStream(out.toByteArray()), KeyCodec.LONG);
+        assertArrayEquals(avl.subSet(1000L, 500000L).toArray(), range.toArray());
+
+        try {
+            AVLTree.readFrom(new ByteArrayInputStream(out.toByteArray()), KeyCodec.INT);
+            fail();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void spliteratorTest() {
+        AVLTree<Integer> avl = new AVLTree<>();
+        for (int i = 0; i < 100000; i++) avl.add(i);
+
+        assertEquals(100000L * 99999 / 2, avl.parallelStream().mapToLong(Integer::longValue).sum());
+        assertEquals(new ArrayList<>(avl), avl.parallelStream().map(value -> value).collect(Collectors.toList()));
+
+        Spliterator<Integer> suffix = avl.spliterator();
+        assertTrue(suffix.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED));
+        assertEquals(100000, suffix.getExactSizeIfKnown());
+        Spliterator<Integer> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        assertEquals(100000, prefix.getExactSizeIfKnown() + suffix.getExactSizeIfKnown());
+        assertTrue(Math.abs(prefix.getExactSizeIfKnown() - suffix.getExactSizeIfKnown()) < 100000 / 3);
+
+        ArrayList<Integer> values = new ArrayList<>();
+        assertTrue(prefix.tryAdvance(values::add));
+        prefix.forEachRemaining(values::add);
+        suffix.forEachRemaining(values::add);
+        assertEquals(new ArrayList<>(avl), values);
+        assertEquals(0, suffix.estimateSize());
+
+        assertEquals(1000, avl.subSet(500, 1500).stream().count());
+        assertEquals(0, new AVLTree<Integer>().parallelStream().count());
+    }
+
+    @Test
+    public void parallelBulkTest() {
+        AVLTree<Integer> avl = new AVLTree<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(29);
+        for (int i = 0; i < 1000; i++) {
+            Integer value = random.nextInt(200000);
+            avl.add(value);
+            controlSet.add(value);
+        }
+        ArrayList<Integer> incoming = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) incoming.add(random.nextInt(200000));
+
+        assertTrue(avl.parallelAddAll(incoming));
+        controlSet.addAll(incoming);
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertFalse(avl.parallelAddAll(incoming));
+        assertEquals(controlSet.first(), avl.select(0));
+        assertEquals(controlSet.last(), avl.select(avl.size() - 1));
+
+        AtomicLong sum = new AtomicLong();
+        avl.parallelForEach(sum::addAndGet);
+        assertEquals(controlSet.stream().mapToLong(Integer::longValue).sum(), sum.get());
+
+        assertTrue(avl.parallelRemoveIf(value -> value % 3 == 0));
+        controlSet.removeIf(value -> value % 3 == 0);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertFalse(avl.parallelRemoveIf(value -> value % 3 == 0));
+        for (int i = 0; i < 1000; i++) {
+            Integer value = random.nextInt(200000);
+            assertEquals(controlSet.add(value), avl.add(value));
+        }
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        NavigableSet<Integer> sub = avl.subSet(1000, true, 2000, false);
+        assertTrue(sub.removeIf(value -> value % 2 == 0));
+        controlSet.subSet(1000, 2000).removeIf(value -> value % 2 == 0);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        assertTrue(avl.parallelRemoveIf(value -> true));
+        assertTrue(avl.isEmpty());
+    }
+
+    @Test
+    public void applyBatchTest() {
+        AVLTree<Integer> avl = new AVLTree<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(31);
+        for (int i = 0; i < 20000; i++) {
+            Integer value = random.nextInt(50000);
+            avl.add(value);
+            controlSet.add(value);
+        }
+
+        for (int batch : new int[]{1, 10, 1000, 30000}) {
+            TreeSet<Integer> inserts = new TreeSet<>();
+            TreeSet<Integer> deletes = new TreeSet<>();
+            for (int i = 0; i < batch; i++) {
+                inserts.add(random.nextInt(50000));
+                deletes.add(random.nextInt(50000));
+            }
+            AVLTree<Integer> expected = AVLTree.fromSorted(avl.iterator(), avl.size());
+            AVLTree.BatchResult expectedResult = expected.applyEach(inserts, deletes);
+            AVLTree.BatchResult result = avl.applyBatch(inserts, deletes);
+
+            ArrayList<Integer> deleteList = new ArrayList<>(deletes);
+            for (int i = 0; i < deleteList.size(); i++) {
+                assertEquals(controlSet.remove(deleteList.get(i)), result.deleted(i));
+                assertEquals(expectedResult.deleted(i), result.deleted(i));
+            }
+            ArrayList<Integer> insertList = new ArrayList<>(inserts);
+            for (int i = 0; i < insertList.size(); i++) {
+                assertEquals(controlSet.add(insertList.get(i)), result.inserted(i));
+                assertEquals(expectedResult.inserted(i), result.inserted(i));
+            }
+            assertEquals(expectedResult.insertedCount(), result.insertedCount());
+            assertEquals(expectedResult.deletedCount(), result.deletedCount());
+            assertEquals(controlSet.size(), avl.size());
+            assertArrayEquals(controlSet.toArray(), avl.toArray());
+            for (int i = 0; i < avl.size(); i += 97) {
+                assertEquals(i, avl.rank(avl.select(i)));
+            }
+        }
+
+        AVLTree<Integer> sub = avl.subSet(100, true, 200, false);
+        AVLTree.BatchResult result = sub.applyBatch(Arrays.asList(150, 160), Arrays.asList(150));
+        assertEquals(controlSet.remove(150), result.deleted(0));
+        assertTrue(result.inserted(0));
+        assertEquals(controlSet.add(160), result.inserted(1));
+        controlSet.add(150);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        try {
+            avl.applyBatch(Arrays.asList(2, 1), Arrays.<Integer>asList());
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void comparatorTest() throws IOException {
+        AVLTree<Integer> natural = new AVLTree<>();
+        assertNull(natural.comparator());
+        assertNull(natural.spliterator().getComparator());
+
+        AVLTree<Integer> avl = new AVLTree<>(Comparator.reverseOrder());
+        TreeSet<Integer> controlSet = new TreeSet<>(Comparator.reverseOrder());
+        Random random = new Random(43);
+        for (int i = 0; i < 20000; i++) {
+            Integer value = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+        assertEquals(controlSet.comparator(), avl.comparator());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertEquals(controlSet.first(), avl.first());
+        assertEquals(controlSet.ceiling(2500), avl.ceiling(2500));
+        assertArrayEquals(controlSet.subSet(4000, 1000).toArray(), avl.subSet(4000, 1000).toArray());
+        assertArrayEquals(controlSet.toArray(), avl.freeze().toArray());
+        assertArrayEquals(controlSet.toArray(), new TreeSet<>(avl).toArray());
+
+        natural.addAll(avl);
+        TreeSet<Integer> ascending = new TreeSet<>();
+        ascending.addAll(controlSet);
+        assertArrayEquals(ascending.toArray(), natural.toArray());
+        AVLTree<Integer> copy = new AVLTree<>(avl.comparator());
+        copy.addAll(avl);
+        assertArrayEquals(avl.toArray(), copy.toArray());
+        assertTrue(copy.removeAll(natural.headSet(2500)));
+        controlSet.removeAll(natural.headSet(2500));
+        assertArrayEquals(controlSet.toArray(), copy.toArray());
+        AVLTree<Integer> tail = copy.split(3000);
+        assertArrayEquals(controlSet.headSet(3000).toArray(), copy.toArray());
+        assertArrayEquals(controlSet.tailSet(3000).toArray(), tail.toArray());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        avl.writeTo(out, KeyCodec.INT, true);
+        AVLTree<Integer> restored = AVLTree.readFrom(new ByteArrayInputStream(out.toByteArray()), KeyCodec.INT, avl.comparator());
+        assertEquals(avl.comparator(), restored.comparator());
+        assertArrayEquals(avl.toArray(), restored.toArray());
+        try {
+            AVLTree.readFrom(new ByteArrayInputStream(out.toByteArray()), KeyCodec.INT);
+            fail();
+        } catch (IOException ignored) {
+        }
+
+        AVLTree<String> nullable = new AVLTree<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        nullable.add("b");
+        nullable.add(null);
+        nullable.add("a");
+        assertArrayEquals(new String[]{null, "a", "b"}, nullable.toArray());
+        assertFalse(nullable.spliterator().hasCharacteristics(Spliterator.NONNULL));
+        assertTrue(natural.spliterator().hasCharacteristics(Spliterator.NONNULL));
+
+        AVLTree<String> strings = new AVLTree<>(String.CASE_INSENSITIVE_ORDER);
+        assertTrue(strings.add("b"));
+        assertTrue(strings.add("A"));
+        assertFalse(strings.add("a"));
+        assertTrue(strings.contains("B"));
+        assertArrayEquals(new String[]{"A", "b"}, strings.toArray());
+    }
+
+    @Test
+    public void nullsFirstTest() {
+        Comparator<String> nullsFirst = Comparator.nullsFirst(Comparator.<String>naturalOrder());
+        AVLTree<String> avl = new AVLTree<>(nullsFirst);
+        TreeSet<String> controlSet = new TreeSet<>(nullsFirst);
+        for (String value : new String[]{"d", null, "b", "a", "c"}) {
+            assertEquals(controlSet.add(value), avl.add(value));
+        }
+        assertTrue(avl.contains(null));
+        assertNull(avl.first());
+        assertArrayEquals(controlSet.headSet(null, true).toArray(), avl.headSet(null, true).toArray());
+        assertArrayEquals(controlSet.headSet("c").toArray(), avl.headSet("c").toArray());
+        assertArrayEquals(controlSet.tailSet(null).toArray(), avl.tailSet(null).toArray());
+        assertArrayEquals(controlSet.tailSet(null, false).toArray(), avl.tailSet(null, false).toArray());
+        assertArrayEquals(controlSet.subSet(null, "c").toArray(), avl.subSet(null, "c").toArray());
+        assertEquals(controlSet.headSet("b").size(), avl.headSet("b").size());
+        assertTrue(avl.headSet(null, false).isEmpty());
+        assertFalse(avl.headSet(null, true).isEmpty());
+        assertNull(avl.headSet("b").first());
+        assertArrayEquals(controlSet.tailSet(null, true).descendingSet().toArray(), avl.tailSet(null, true).descendingSet().toArray());
+        assertNull(avl.subSet(null, true, "c", false).pollFirst());
+        controlSet.remove(null);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        AVLTree.BatchResult result = avl.applyBatch(Arrays.asList(null, "e"), Arrays.asList("a"));
+        controlSet.add(null);
+        controlSet.add("e");
+        controlSet.remove("a");
+        assertEquals(2, result.insertedCount());
+        assertEquals(1, result.deletedCount());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+        AVLTree<String> natural = new AVLTree<>();
+        try {
+            natural.headSet(null);
+            fail();
+        } catch (NullPointerException ignored) {
+        }
+        try {
+            natural.applyBatch(Arrays.asList((String) null), Arrays.<String>asList());
+            fail();
+        } catch (NullPointerException ignored) {
+        }
+    }
+}
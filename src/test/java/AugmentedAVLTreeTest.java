@@ -0,0 +1,97 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class AugmentedAVLTreeTest {
+
+    private static long sum(SortedSet<Integer> values) {
+        long sum = 0;
+        for (Integer value : values) sum += value;
+        return sum;
+    }
+
+    @Test
+    public void aggregateTest() {
+        AugmentedAVLTree<Integer, Long> avl = new AugmentedAVLTree<>(Monoid.sumLong(Integer::longValue));
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(53);
+        for (int i = 0; i < 50000; i++) {
+            Integer value = random.nextInt(10000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(Long.valueOf(sum(controlSet)), avl.aggregate());
+        for (int i = 0; i < 1000; i++) {
+            int from = random.nextInt(11000) - 500;
+            int to = from + random.nextInt(3000);
+            assertEquals(Long.valueOf(sum(controlSet.subSet(from, to))), avl.aggregate(from, to));
+        }
+        assertEquals(Long.valueOf(sum(controlSet.headSet(5000))), avl.aggregate(null, 5000));
+        assertEquals(Long.valueOf(sum(controlSet.tailSet(5000))), avl.aggregate(5000, null));
+        assertEquals(Long.valueOf(0), avl.aggregate(7000, 3000));
+
+        Iterator<Integer> iterator = avl.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 3 == 0) iterator.remove();
+        }
+        controlSet.removeIf(value -> value % 3 == 0);
+        avl.pollFirst();
+        controlSet.pollFirst();
+        AugmentedAVLTree<Integer, Long> tail = avl.split(6000);
+        assertEquals(Long.valueOf(sum(controlSet.tailSet(6000))), tail.aggregate());
+        assertEquals(Long.valueOf(sum(controlSet.headSet(6000))), avl.aggregate());
+        avl.join(tail);
+
+        ArrayList<Integer> incoming = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) incoming.add(random.nextInt(20000));
+        avl.parallelAddAll(incoming);
+        controlSet.addAll(incoming);
+        assertEquals(Long.valueOf(sum(controlSet)), avl.aggregate());
+        assertEquals(Long.valueOf(sum(controlSet.subSet(2500, 17500))), avl.aggregate(2500, 17500));
+
+        AVLTree<Integer> other = new AVLTree<>();
+        for (int i = 0; i < 30000; i += 7) other.add(i);
+        avl.union(other);
+        controlSet.addAll(other);
+        assertEquals(Long.valueOf(sum(controlSet.subSet(100, 25000))), avl.aggregate(100, 25000));
+        avl.difference(other);
+        controlSet.removeAll(other);
+        assertEquals(Long.valueOf(sum(controlSet)), avl.aggregate());
+        try {
+            avl.join(other);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void builtInMonoidsTest() {
+        AugmentedAVLTree<String, Integer> count = new AugmentedAVLTree<>(Monoid.count());
+        AugmentedAVLTree<String, Integer> shortest = new AugmentedAVLTree<>(Monoid.min(String::length));
+        AugmentedAVLTree<String, Integer> longest = new AugmentedAVLTree<>(Monoid.max(String::length));
+        AugmentedAVLTree<String, Double> total = new AugmentedAVLTree<>(Monoid.sumDouble(String::length));
+        for (String word : new String[]{"pear", "fig", "banana", "apple", "kiwi", "cherry", "date"}) {
+            count.add(word);
+            shortest.add(word);
+            longest.add(word);
+            total.add(word);
+        }
+
+        assertEquals(Integer.valueOf(7), count.aggregate());
+        assertEquals(Integer.valueOf(4), count.aggregate("b", "g"));
+        assertEquals(Integer.valueOf(3), shortest.aggregate("b", "l"));
+        assertEquals(Integer.valueOf(6), longest.aggregate("c", "z"));
+        assertEquals(Integer.valueOf(5), longest.aggregate("a", "b"));
+        assertNull(longest.aggregate("x", "z"));
+        assertEquals(32.0, total.aggregate(), 0.0);
+    }
+}
@@ -0,0 +1,201 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class BTreeSetTest {
+
+    @Test
+    public void addRemoveTest() {
+        BTreeSet<Integer> tree = new BTreeSet<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(37);
+        for (int i = 0; i < 200000; i++) {
+            Integer value = random.nextInt(50000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), tree.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), tree.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), tree.size());
+        assertArrayEquals(controlSet.toArray(), tree.toArray());
+        assertEquals(controlSet.first(), tree.first());
+        assertEquals(controlSet.last(), tree.last());
+        for (int i = 0; i < 50000; i += 7) {
+            assertEquals(controlSet.contains(i), tree.contains(i));
+            assertEquals(controlSet.headSet(i).size(), tree.rank(i));
+        }
+        int index = 0;
+        for (Integer value : controlSet) {
+            if (index % 101 == 0) assertEquals(value, tree.select(index));
+            index++;
+        }
+
+        for (Integer value : controlSet) assertTrue(tree.remove(value));
+        assertTrue(tree.isEmpty());
+        assertFalse(tree.iterator().hasNext());
+        tree.add(1);
+        assertEquals(Integer.valueOf(1), tree.first());
+    }
+
+    @Test
+    public void viewTest() {
+        BTreeSet<Integer> tree = new BTreeSet<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 20000; i += 3) {
+            tree.add(i);
+            controlSet.add(i);
+        }
+
+        SortedSet<Integer> view = tree.subSet(1000, 5000);
+        SortedSet<Integer> controlView = controlSet.subSet(1000, 5000);
+        assertEquals(controlView.size(), view.size());
+        assertArrayEquals(controlView.toArray(), view.toArray());
+        assertEquals(controlView.first(), view.first());
+        assertEquals(controlView.last(), view.last());
+        assertEquals(controlSet.headSet(7001).last(), tree.headSet(7001).last());
+        assertEquals(controlSet.tailSet(7001).first(), tree.tailSet(7001).first());
+        assertEquals(controlView.headSet(2000).size(), view.headSet(2000).size());
+        assertTrue(tree.subSet(1001, 1002).isEmpty());
+
+        try {
+            view.add(6000);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        Iterator<Integer> iterator = view.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) iterator.remove();
+        }
+        controlView.removeIf(value -> value % 2 == 0);
+        assertArrayEquals(controlSet.toArray(), tree.toArray());
+
+        iterator = tree.iterator();
+        while (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+        assertEquals(0, tree.size());
+    }
+
+    @Test
+    public void navigableTest() {
+        BTreeSet<Integer> tree = new BTreeSet<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 10000; i += 4) {
+            tree.add(i);
+            controlSet.add(i);
+        }
+
+        boolean[] flags = {true, false};
+        for (boolean fromInclusive : flags) {
+            for (boolean toInclusive : flags) {
+                NavigableSet<Integer> view = tree.subSet(400, fromInclusive, 2000, toInclusive);
+                NavigableSet<Integer> controlView = controlSet.subSet(400, fromInclusive, 2000, toInclusive);
+                assertEquals(controlView.size(), view.size());
+                assertEquals(controlView.first(), view.first());
+                assertEquals(controlView.last(), view.last());
+                assertArrayEquals(controlView.toArray(), view.toArray());
+                assertArrayEquals(controlView.descendingSet().toArray(), view.descendingSet().toArray());
+                assertEquals(controlSet.headSet(2000, toInclusive).size(), tree.headSet(2000, toInclusive).size());
+                assertEquals(controlSet.tailSet(2000, fromInclusive).size(), tree.tailSet(2000, fromInclusive).size());
+                for (int i = 0; i < 2500; i += 3) {
+                    assertEquals(controlSet.lower(i), tree.lower(i));
+                    assertEquals(controlSet.floor(i), tree.floor(i));
+                    assertEquals(controlSet.ceiling(i), tree.ceiling(i));
+                    assertEquals(controlSet.higher(i), tree.higher(i));
+                    assertEquals(controlView.lower(i), view.lower(i));
+                    assertEquals(controlView.floor(i), view.floor(i));
+                    assertEquals(controlView.ceiling(i), view.ceiling(i));
+                    assertEquals(controlView.higher(i), view.higher(i));
+                }
+            }
+        }
+        assertNull(tree.lower(0));
+        assertNull(tree.higher(9996));
+        assertTrue(tree.subSet(8, 8).isEmpty());
+
+        NavigableSet<Integer> view = tree.subSet(400, false, 2000, true);
+        assertEquals(Integer.valueOf(404), view.pollFirst());
+        assertEquals(Integer.valueOf(2000), view.pollLast());
+        assertEquals(Integer.valueOf(0), tree.pollFirst());
+        assertEquals(Integer.valueOf(9996), tree.pollLast());
+        controlSet.remove(404);
+        controlSet.remove(2000);
+        controlSet.remove(0);
+        controlSet.remove(9996);
+        assertArrayEquals(controlSet.toArray(), tree.toArray());
+
+        Iterator<Integer> iterator = tree.descendingIterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 8 == 0) iterator.remove();
+        }
+        controlSet.removeIf(value -> value % 8 == 0);
+        assertArrayEquals(controlSet.toArray(), tree.toArray());
+        assertArrayEquals(controlSet.descendingSet().headSet(5000, true).toArray(),
+                tree.descendingSet().headSet(5000, true).toArray());
+
+        NavigableSet<Integer> empty = new BTreeSet<>();
+        assertNull(empty.pollFirst());
+        assertNull(empty.pollLast());
+        assertNull(empty.floor(1));
+    }
+
+    @Test
+    public void comparatorTest() {
+        assertNull(new BTreeSet<Integer>().comparator());
+
+        BTreeSet<Integer> tree = new BTreeSet<>(Comparator.reverseOrder());
+        TreeSet<Integer> controlSet = new TreeSet<>(Comparator.reverseOrder());
+        Random random = new Random(43);
+        for (int i = 0; i < 20000; i++) {
+            Integer value = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), tree.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), tree.add(value));
+            }
+        }
+        assertEquals(controlSet.comparator(), tree.comparator());
+        assertArrayEquals(controlSet.toArray(), tree.toArray());
+        assertEquals(controlSet.first(), tree.first());
+        assertEquals(controlSet.ceiling(2500), tree.ceiling(2500));
+        assertEquals(controlSet.lower(2500), tree.lower(2500));
+        NavigableSet<Integer> view = tree.subSet(4000, true, 1000, false);
+        assertEquals(controlSet.comparator(), view.comparator());
+        assertEquals(controlSet.subSet(4000, 1000).size(), view.size());
+        assertArrayEquals(controlSet.subSet(4000, 1000).toArray(), view.toArray());
+        assertArrayEquals(controlSet.headSet(2500).toArray(), tree.headSet(2500).toArray());
+
+        BTreeSet<String> strings = new BTreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        assertTrue(strings.add("b"));
+        assertTrue(strings.add("A"));
+        assertFalse(strings.add("a"));
+        assertTrue(strings.contains("B"));
+        assertArrayEquals(new String[]{"A", "b"}, strings.toArray());
+
+        BTreeSet<String> nullable = new BTreeSet<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+        TreeSet<String> controlNullable = new TreeSet<>(nullable.comparator());
+        for (String value : new String[]{"d", null, "b", "a", "c"}) {
+            assertEquals(controlNullable.add(value), nullable.add(value));
+        }
+        assertTrue(nullable.contains(null));
+        assertArrayEquals(controlNullable.toArray(), nullable.toArray());
+        assertArrayEquals(controlNullable.headSet(null, true).toArray(), nullable.headSet(null, true).toArray());
+        assertArrayEquals(controlNullable.tailSet(null, false).toArray(), nullable.tailSet(null, false).toArray());
+        assertEquals(controlNullable.subSet(null, "c").size(), nullable.subSet(null, "c").size());
+        Iterator<String> iterator = nullable.iterator();
+        iterator.next();
+        iterator.remove();
+        controlNullable.remove(null);
+        assertArrayEquals(controlNullable.toArray(), nullable.toArray());
+    }
+}
@@ -0,0 +1,166 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ConcurrentAVLTreeTest {
+
+    @Test
+    public void sequentialTest() {
+        SortedSet<Integer> avl = new ConcurrentAVLTree<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 50000; i++) {
+            Integer value = random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertEquals(controlSet.first(), avl.first());
+        assertEquals(controlSet.last(), avl.last());
+        assertArrayEquals(controlSet.subSet(500, 900).toArray(), avl.subSet(500, 900).toArray());
+        assertEquals(controlSet.subSet(500, 900).size(), avl.subSet(500, 900).size());
+        assertEquals(controlSet.tailSet(700).size(), avl.tailSet(700).size());
+        assertEquals(controlSet.headSet(700).last(), avl.headSet(700).last());
+        assertEquals(controlSet.tailSet(700).first(), avl.tailSet(700).first());
+
+        Iterator<Integer> iterator = avl.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) iterator.remove();
+        }
+        controlSet.removeIf(value -> value % 2 == 0);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+    }
+
+    @Test
+    public void concurrentReadersTest() throws InterruptedException {
+        ConcurrentAVLTree<Integer> avl = new ConcurrentAVLTree<>();
+        // even keys stay in the set for the whole test, writers churn the odd ones
+        for (int i = 0; i < 10000; i += 2) avl.add(i);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            final int seed = w;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    int value = random.nextInt(5000) * 2 + 1;
+                    if (random.nextBoolean()) avl.add(value);
+                    else avl.remove(value);
+                }
+            }));
+        }
+        for (int r = 0; r < 4; r++) {
+            final int seed = 100 + r;
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 200000; i++) {
+                        int value = random.nextInt(5000) * 2;
+                        if (!avl.contains(value)) throw new AssertionError("lost " + value);
+                        if (avl.first() != 0) throw new AssertionError("first");
+                    }
+                    Integer previous = null;
+                    for (Integer value : avl) {
+                        if (previous != null && previous >= value) throw new AssertionError("order");
+                        previous = value;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads.subList(2, threads.size())) thread.join();
+        running.set(false);
+        for (Thread thread : threads) thread.join();
+
+        assertNull(failure.get());
+        int count = 0;
+        for (Integer ignored : avl) count++;
+        assertEquals(count, avl.size());
+    }
+
+    // compares like its value, but a blocking key parks whoever compares it until release opens
+    private static final class Key implements Comparable<Key> {
+        final int value;
+        final CountDownLatch entered;
+        final CountDownLatch release;
+
+        Key(int value, CountDownLatch entered, CountDownLatch release) {
+            this.value = value;
+            this.entered = entered;
+            this.release = release;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            Key blocking = release != null ? this : other.release != null ? other : null;
+            if (blocking != null) {
+                blocking.entered.countDown();
+                try {
+                    blocking.release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return Integer.compare(value, other.value);
+        }
+    }
+
+    @Test
+    public void readersDuringWriteTest() throws InterruptedException {
+        ConcurrentAVLTree<Key> avl = new ConcurrentAVLTree<>();
+        for (int i = 0; i < 1000; i += 2) avl.add(new Key(i, null, null));
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> avl.add(new Key(501, entered, release)));
+        writer.start();
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        // the writer is parked inside add, so every read below would wait on a lock it holds
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 1000; i++) {
+                    if (avl.contains(new Key(i, null, null)) != (i % 2 == 0)) throw new AssertionError("contains " + i);
+                }
+                if (avl.first().value != 0 || avl.last().value != 998) throw new AssertionError("bounds");
+                if (avl.headSet(new Key(10, null, null)).size() != 5) throw new AssertionError("view");
+                int count = 0;
+                for (Key ignored : avl) count++;
+                if (count != 500) throw new AssertionError("count " + count);
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        reader.join(10000);
+        boolean finished = !reader.isAlive();
+        release.countDown();
+        writer.join();
+
+        assertTrue(finished);
+        assertNull(failure.get());
+        assertEquals(501, avl.size());
+        assertTrue(avl.contains(new Key(501, null, null)));
+    }
+}
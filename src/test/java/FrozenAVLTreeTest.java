@@ -0,0 +1,71 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class FrozenAVLTreeTest {
+
+    @Test
+    public void freezeTest() {
+        AVLTree<Integer> avl = new AVLTree<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(41);
+        for (int i = 0; i < 30000; i++) {
+            Integer value = random.nextInt(100000);
+            avl.add(value);
+            controlSet.add(value);
+        }
+
+        FrozenAVLTree<Integer> frozen = avl.freeze();
+        avl.add(-1);
+        assertEquals(controlSet.size(), frozen.size());
+        assertArrayEquals(controlSet.toArray(), frozen.toArray());
+        assertEquals(controlSet.first(), frozen.first());
+        assertEquals(controlSet.last(), frozen.last());
+        for (int i = -1; i < 100001; i += 3) {
+            assertEquals(controlSet.contains(i), frozen.contains(i));
+            assertEquals(controlSet.headSet(i).size(), frozen.rank(i));
+        }
+
+        SortedSet<Integer> view = frozen.subSet(2000, 9000);
+        SortedSet<Integer> controlView = controlSet.subSet(2000, 9000);
+        assertEquals(controlView.size(), view.size());
+        assertArrayEquals(controlView.toArray(), view.toArray());
+        assertEquals(controlView.first(), view.first());
+        assertEquals(controlView.last(), view.last());
+        assertArrayEquals(controlView.headSet(4000).toArray(), view.headSet(4000).toArray());
+        assertEquals(controlSet.headSet(50000).last(), frozen.headSet(50000).last());
+        assertArrayEquals(controlSet.tailSet(99000).toArray(), frozen.tailSet(99000).toArray());
+        assertTrue(frozen.subSet(200000, 300000).isEmpty());
+
+        try {
+            frozen.add(1);
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            frozen.iterator().remove();
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+
+        for (int n = 1; n < 40; n++) {
+            AVLTree<Integer> small = new AVLTree<>();
+            for (int i = 0; i < n; i++) small.add(2 * i);
+            FrozenAVLTree<Integer> smallFrozen = small.freeze();
+            assertArrayEquals(small.toArray(), smallFrozen.toArray());
+            for (int i = 0; i <= 2 * n; i++) {
+                assertEquals(small.headSet(i).size(), smallFrozen.headSet(i).size());
+                if (i > 0) assertEquals(small.headSet(i).last(), smallFrozen.headSet(i).last());
+            }
+        }
+
+        FrozenAVLTree<Integer> empty = new AVLTree<Integer>().freeze();
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.iterator().hasNext());
+        assertFalse(empty.contains(1));
+        assertTrue(empty.headSet(5).isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class IntAVLTreeTest {
+
+    @Test
+    public void addRemoveContainsTest() {
+        IntAVLTree avl = new IntAVLTree(4);
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 100000; i++) {
+            int value = random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(controlSet.contains(i), avl.contains(i));
+        }
+        assertEquals((int) controlSet.first(), avl.first());
+        assertEquals((int) controlSet.last(), avl.last());
+
+        avl.clear();
+        assertTrue(avl.isEmpty());
+        assertFalse(avl.contains(controlSet.first()));
+    }
+
+    @Test
+    public void cursorTest() {
+        IntAVLTree avl = new IntAVLTree();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            avl.add(i * 3);
+            controlSet.add(i * 3);
+        }
+
+        IntAVLTree.Cursor cursor = avl.cursor();
+        for (Integer value : controlSet) {
+            assertTrue(cursor.hasNext());
+            assertEquals((int) value, cursor.nextInt());
+        }
+        assertFalse(cursor.hasNext());
+
+        cursor = avl.cursor(100, 200);
+        for (Integer value : controlSet.subSet(100, 200)) {
+            assertEquals((int) value, cursor.nextInt());
+        }
+        assertFalse(cursor.hasNext());
+
+        cursor = avl.cursor(0, 3000);
+        while (cursor.hasNext()) {
+            if (cursor.nextInt() % 2 == 0) cursor.remove();
+        }
+        controlSet.removeIf(value -> value % 2 == 0);
+        cursor = avl.cursor();
+        for (Integer value : controlSet) {
+            assertEquals((int) value, cursor.nextInt());
+        }
+        assertEquals(controlSet.size(), avl.size());
+
+        try {
+            new IntAVLTree().first();
+            fail();
+        } catch (NoSuchElementException ignored) {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class IntervalTreeTest {
+
+    private static List<IntervalTree.Interval> drain(Iterator<IntervalTree.Interval> cursor) {
+        List<IntervalTree.Interval> result = new ArrayList<>();
+        while (cursor.hasNext()) result.add(cursor.next());
+        return result;
+    }
+
+    private static List<IntervalTree.Interval> scan(TreeSet<IntervalTree.Interval> intervals, long from, long to) {
+        List<IntervalTree.Interval> result = new ArrayList<>();
+        for (IntervalTree.Interval interval : intervals) {
+            if (interval.overlaps(from, to)) result.add(interval);
+        }
+        return result;
+    }
+
+    @Test
+    public void overlapTest() {
+        IntervalTree tree = new IntervalTree();
+        TreeSet<IntervalTree.Interval> controlSet = new TreeSet<>();
+        Random random = new Random(59);
+        for (int i = 0; i < 20000; i++) {
+            long start = random.nextInt(100000);
+            long end = start + (random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(100));
+            IntervalTree.Interval interval = new IntervalTree.Interval(start, end);
+            if (random.nextInt(4) == 0) {
+                assertEquals(controlSet.remove(interval), tree.remove(start, end));
+            } else {
+                assertEquals(controlSet.add(interval), tree.add(interval));
+            }
+        }
+
+        for (int i = 0; i < 300; i++) {
+            long from = random.nextInt(130000) - 10000;
+            long to = from + random.nextInt(500);
+            assertEquals(scan(controlSet, from, to), drain(tree.overlapping(from, to)));
+            assertEquals(scan(controlSet, from, from), drain(tree.stabbing(from)));
+        }
+        assertEquals(new ArrayList<>(controlSet), drain(tree.overlapping(Long.MIN_VALUE, Long.MAX_VALUE)));
+        assertFalse(tree.overlapping(200000, 300000).hasNext());
+
+        IntervalTree empty = new IntervalTree();
+        assertFalse(empty.stabbing(0).hasNext());
+        try {
+            empty.stabbing(0).next();
+            fail();
+        } catch (NoSuchElementException ignored) {
+        }
+    }
+
+    @Test
+    public void stabbingTest() {
+        IntervalTree tree = new IntervalTree();
+        tree.add(1, 5);
+        tree.add(3, 3);
+        tree.add(4, 10);
+        tree.add(6, 8);
+        tree.add(11, 12);
+
+        List<String> hits = new ArrayList<>();
+        for (Iterator<IntervalTree.Interval> cursor = tree.stabbing(4); cursor.hasNext(); ) {
+            hits.add(cursor.next().toString());
+        }
+        assertEquals("[[1, 5], [4, 10]]", hits.toString());
+        assertEquals(4, drain(tree.overlapping(3, 6)).size());
+        assertEquals(Long.valueOf(12), tree.aggregate());
+        assertEquals(Long.valueOf(10), tree.aggregate(new IntervalTree.Interval(3, 3), new IntervalTree.Interval(6, 8)));
+
+        IntervalTree tail = (IntervalTree) tree.split(new IntervalTree.Interval(4, 10));
+        assertEquals(Long.valueOf(5), tree.aggregate());
+        assertEquals(2, drain(tail.stabbing(7)).size());
+        tree.join(tail);
+        assertEquals(5, tree.size());
+
+        try {
+            new IntervalTree.Interval(2, 1);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class LongAVLTreeTest {
+
+    @Test
+    public void addRemoveContainsTest() {
+        LongAVLTree avl = new LongAVLTree(4);
+        TreeSet<Long> controlSet = new TreeSet<>();
+        Random random = new Random(11);
+
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(20000) * 1000000000L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(controlSet.contains(i * 1000000000L), avl.contains(i * 1000000000L));
+        }
+        assertEquals((long) controlSet.first(), avl.first());
+        assertEquals((long) controlSet.last(), avl.last());
+
+        avl.clear();
+        assertTrue(avl.isEmpty());
+        assertFalse(avl.contains(controlSet.first()));
+    }
+
+    @Test
+    public void cursorTest() {
+        LongAVLTree avl = new LongAVLTree();
+        TreeSet<Long> controlSet = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            avl.add(i * 3 * 1000000000L);
+            controlSet.add(i * 3 * 1000000000L);
+        }
+
+        LongAVLTree.Cursor cursor = avl.cursor();
+        for (Long value : controlSet) {
+            assertTrue(cursor.hasNext());
+            assertEquals((long) value, cursor.nextLong());
+        }
+        assertFalse(cursor.hasNext());
+
+        cursor = avl.cursor(100 * 1000000000L, 200 * 1000000000L);
+        for (Long value : controlSet.subSet(100 * 1000000000L, 200 * 1000000000L)) {
+            assertEquals((long) value, cursor.nextLong());
+        }
+        assertFalse(cursor.hasNext());
+
+        cursor = avl.cursor(0, 3000 * 1000000000L);
+        while (cursor.hasNext()) {
+            if (cursor.nextLong() % 2 == 0) cursor.remove();
+        }
+        controlSet.removeIf(value -> value % 2 == 0);
+        cursor = avl.cursor();
+        for (Long value : controlSet) {
+            assertEquals((long) value, cursor.nextLong());
+        }
+        assertEquals(controlSet.size(), avl.size());
+
+        try {
+            new LongAVLTree().first();
+            fail();
+        } catch (NoSuchElementException ignored) {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class MappedAVLTreeTest {
+
+    @Test
+    public void reopenTest() throws IOException {
+        Path file = Files.createTempFile("avl", ".tree");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+
+        TreeSet<Long> controlSet = new TreeSet<>();
+        Random random = new Random(8);
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            for (int i = 0; i < 100000; i++) {
+                Long value = (long) random.nextInt(150000);
+                if (random.nextInt(5) == 0) {
+                    assertEquals(controlSet.remove(value), avl.remove(value));
+                } else {
+                    assertEquals(controlSet.add(value), avl.add(value));
+                }
+            }
+        }
+
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            assertEquals(controlSet.size(), avl.size());
+            assertArrayEquals(controlSet.toArray(), avl.toArray());
+
+            assertTrue(avl.add(-1L));
+            avl.force();
+            assertTrue(avl.remove(-1L));
+            assertTrue(avl.add(1000000L));
+            controlSet.add(1000000L);
+        }
+
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            assertArrayEquals(controlSet.toArray(), avl.toArray());
+        }
+    }
+
+    @Test
+    public void crashRecoveryTest() throws IOException {
+        Path file = Files.createTempFile("avl", ".tree");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+
+        // the first tree is never closed, so the second open sees its unforced writes as a crash would
+        MappedAVLTree<Long> crashed = MappedAVLTree.open(file, KeyCodec.LONG);
+        for (long i = 0; i < 1000; i++) {
+            crashed.add(i);
+        }
+        crashed.force();
+        for (long i = 0; i < 1000; i += 2) {
+            crashed.remove(i);
+        }
+        for (long i = 5000; i < 5300; i++) {
+            crashed.add(i);
+        }
+
+        TreeSet<Long> controlSet = new TreeSet<>();
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            assertEquals(1000, avl.size());
+            for (long i = 0; i < 1000; i++) {
+                controlSet.add(i);
+            }
+            assertArrayEquals(controlSet.toArray(), avl.toArray());
+            assertTrue(avl.contains(0L));
+            assertFalse(avl.contains(5000L));
+
+            for (long i = 0; i < 1000; i += 3) {
+                assertTrue(avl.remove(i));
+                controlSet.remove(i);
+            }
+            for (long i = 2000; i < 3000; i++) {
+                assertTrue(avl.add(i));
+                controlSet.add(i);
+            }
+            avl.force();
+            avl.clear();
+            avl.add(-1L);
+        }
+
+        controlSet.clear();
+        controlSet.add(-1L);
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            assertArrayEquals(controlSet.toArray(), avl.toArray());
+        }
+    }
+
+    @Test
+    public void codecMismatchTest() throws IOException {
+        Path file = Files.createTempFile("avl", ".tree");
+        file.toFile().deleteOnExit();
+        Files.delete(file);
+
+        try (MappedAVLTree<Long> avl = MappedAVLTree.open(file, KeyCodec.LONG)) {
+            avl.add(1L);
+        }
+        try {
+            MappedAVLTree.open(file, KeyCodec.INT).close();
+            fail();
+        } catch (IOException ignored) {
+        }
+    }
+}
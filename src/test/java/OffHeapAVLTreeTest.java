@@ -0,0 +1,72 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class OffHeapAVLTreeTest {
+
+    @Test
+    public void addRemoveContainsTest() {
+        SortedSet<Integer> avl = new OffHeapAVLTree<>(KeyCodec.INT);
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(21);
+
+        for (int i = 0; i < 150000; i++) {
+            Integer value = random.nextInt(200000);
+            if (random.nextInt(4) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertEquals(controlSet.first(), avl.first());
+        assertEquals(controlSet.last(), avl.last());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(controlSet.contains(i), avl.contains(i));
+        }
+
+        avl.clear();
+        assertTrue(avl.isEmpty());
+        assertTrue(avl.add(5));
+        assertEquals(1, avl.size());
+    }
+
+    @Test
+    public void viewTest() {
+        SortedSet<Long> avl = new OffHeapAVLTree<>(KeyCodec.LONG);
+        TreeSet<Long> controlSet = new TreeSet<>();
+        for (long i = 0; i < 1000; i++) {
+            avl.add(i * 5);
+            controlSet.add(i * 5);
+        }
+
+        assertArrayEquals(controlSet.subSet(101L, 2000L).toArray(), avl.subSet(101L, 2000L).toArray());
+        assertArrayEquals(controlSet.headSet(333L).toArray(), avl.headSet(333L).toArray());
+        assertArrayEquals(controlSet.tailSet(4000L).toArray(), avl.tailSet(4000L).toArray());
+        assertEquals(controlSet.subSet(101L, 2000L).size(), avl.subSet(101L, 2000L).size());
+        assertEquals(controlSet.subSet(101L, 2000L).first(), avl.subSet(101L, 2000L).first());
+        assertEquals(controlSet.subSet(101L, 2000L).last(), avl.subSet(101L, 2000L).last());
+        assertTrue(avl.subSet(101L, 104L).isEmpty());
+
+        Iterator<Long> iterator = avl.subSet(1000L, 3000L).iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 10 == 0) iterator.remove();
+        }
+        controlSet.subSet(1000L, 3000L).removeIf(value -> value % 10 == 0);
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertEquals(controlSet.subSet(999L, 3001L).size(), avl.subSet(999L, 3001L).size());
+        assertEquals(controlSet.headSet(2500L).size(), avl.headSet(2500L).size());
+        assertEquals(controlSet.tailSet(2500L).size(), avl.tailSet(2500L).size());
+        assertNullComparator(avl);
+    }
+
+    private static void assertNullComparator(SortedSet<?> set) {
+        assertNull(set.comparator());
+    }
+}
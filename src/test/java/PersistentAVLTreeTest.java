@@ -0,0 +1,69 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+public class PersistentAVLTreeTest {
+
+    @Test
+    public void addRemoveTest() {
+        SortedSet<Integer> avl = new PersistentAVLTree<>();
+        TreeSet<Integer> controlSet = new TreeSet<>();
+        Random random = new Random(23);
+        for (int i = 0; i < 50000; i++) {
+            Integer value = random.nextInt(20000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(controlSet.remove(value), avl.remove(value));
+            } else {
+                assertEquals(controlSet.add(value), avl.add(value));
+            }
+        }
+
+        assertEquals(controlSet.size(), avl.size());
+        assertArrayEquals(controlSet.toArray(), avl.toArray());
+        assertEquals(controlSet.first(), avl.first());
+        assertEquals(controlSet.last(), avl.last());
+        assertArrayEquals(controlSet.subSet(1000, 3000).toArray(), avl.subSet(1000, 3000).toArray());
+        assertEquals(controlSet.subSet(1000, 3000).size(), avl.subSet(1000, 3000).size());
+        assertEquals(controlSet.headSet(5000).last(), avl.headSet(5000).last());
+        assertEquals(controlSet.tailSet(5000).first(), avl.tailSet(5000).first());
+    }
+
+    @Test
+    public void snapshotTest() {
+        PersistentAVLTree<Integer> avl = new PersistentAVLTree<>();
+        for (int i = 0; i < 1000; i++) avl.add(i);
+
+        PersistentAVLTree<Integer> snapshot = avl.snapshot();
+        Iterator<Integer> iterator = avl.iterator();
+        for (int i = 0; i < 1000; i += 2) avl.remove(i);
+        avl.add(5000);
+
+        assertEquals(1000, snapshot.size());
+        assertTrue(snapshot.contains(0));
+        assertFalse(snapshot.contains(5000));
+        assertEquals(501, avl.size());
+        assertFalse(avl.contains(0));
+
+        int expected = 0;
+        while (iterator.hasNext()) {
+            assertEquals(Integer.valueOf(expected++), iterator.next());
+        }
+        assertEquals(1000, expected);
+
+        try {
+            snapshot.add(1);
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            snapshot.clear();
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+        assertEquals(1000, snapshot.size());
+    }
+}